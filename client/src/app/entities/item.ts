@@ -17,6 +17,9 @@ export class Item{
   photo: string;
   qty: number;
   rop: number;
+  computedrop: number;
+  salesvelocity: number;
+  daysofcover: number;
   price: number;
   category: Category;
   itemstatus: Itemstatus;
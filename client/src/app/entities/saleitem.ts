@@ -7,6 +7,7 @@ export class Saleitem {
   item: Item;
   qty: number;
   unitprice: number;
+  discount: number;
 
 
   constructor(id: number = null) {
@@ -16,6 +16,7 @@ export class Supplier{
   address: string;
   email: string;
   fax: string;
+  leadtime: number;
   creator: User;
   suppliertype: Suppliertype;
   supplierstatus: Supplierstatus;
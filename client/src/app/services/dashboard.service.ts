@@ -10,6 +10,10 @@ export class DashboardService {
 
   constructor(private http: HttpClient) { }
 
+  async getSummary(): Promise<any>{
+    return this.http.get<any>(ApiManager.getURL('/dashboard/summary')).toPromise();
+  }
+
   async getRecentCustomerCount(): Promise<number>{
     const data = await this.http.get<any>(ApiManager.getURL('/dashboard/recent-customer-count')).toPromise();
     return data.count;
@@ -40,10 +40,11 @@ export class DashboardComponent extends AbstractComponent implements OnInit {
 
   async loadData(): Promise<any> {
     this.updatePrivileges();
-    this.receentCustomerCount = await this.dashboardService.getRecentCustomerCount();
-    this.receentPurchaseCount = await this.dashboardService.getRecentPurchaseCount();
-    this.receentItemCount = await this.dashboardService.getRecentItemCount();
-    this.receentSaleCount = await this.dashboardService.getRecentSaleCount();
+    const summary = await this.dashboardService.getSummary();
+    this.receentCustomerCount = summary.recentCustomerCount || 0;
+    this.receentPurchaseCount = summary.recentPurchaseCount || 0;
+    this.receentItemCount = summary.recentItemCount || 0;
+    this.receentSaleCount = summary.recentSaleCount || 0;
   }
 
   updatePrivileges(): any {
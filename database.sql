@@ -125,15 +125,35 @@ CREATE TABLE `servicelog`(
     `responsecode` INT NULL,
     `ip` VARCHAR(100) NULL,
     `torequest` DATETIME NULL,
+    `duration` INT NULL,
     `url` TEXT NULL,
     `handler` VARCHAR(255) NULL,
     `token_id` CHAR(36) NULL
 );
 
+CREATE TABLE `codesequence`(
+    `name` VARCHAR(64) NOT NULL,
+    `period` CHAR(2) NOT NULL,
+    `nextvalue` BIGINT NOT NULL,
+    PRIMARY KEY (`name`, `period`)
+);
+
+CREATE TABLE `outboxevent`(
+    `id` BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    `type` VARCHAR(40) NOT NULL,
+    `reference` VARCHAR(20) NULL,
+    `message` TEXT NOT NULL,
+    `tocreation` DATETIME NOT NULL,
+    `todispatched` DATETIME NULL,
+    INDEX `index_outboxevent_todispatched` (`todispatched`, `id`)
+);
+
 CREATE TABLE `file`(
     `id` CHAR(36) NOT NULL,
     `file` MEDIUMBLOB NULL,
     `thumbnail` MEDIUMBLOB NULL,
+    `hash` CHAR(64) NULL,
+    `thumbnailhash` CHAR(64) NULL,
     `filemimetype` VARCHAR(255) NULL,
     `thumbnailmimetype` VARCHAR(255) NULL,
     `filesize` INT NULL,
@@ -142,6 +162,83 @@ CREATE TABLE `file`(
     `isused` TINYINT NULL DEFAULT 0
 );
 
+CREATE TABLE `filethumbnail`(
+    `file_id` CHAR(36) NOT NULL,
+    `size` INT NOT NULL,
+    `hash` CHAR(64) NOT NULL,
+    `mimetype` VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE `stockmovement`(
+    `id` BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    `item_id` INT NOT NULL,
+    `qty` INT NOT NULL,
+    `type` VARCHAR(20) NOT NULL,
+    `reference` VARCHAR(20) NULL,
+    `tocreation` DATETIME NOT NULL,
+    INDEX `index_stockmovement_item_id` (`item_id`, `id`)
+);
+
+CREATE TABLE `itemstockstripe`(
+    `item_id` INT NOT NULL,
+    `stripe` INT NOT NULL,
+    `delta` INT NOT NULL,
+    PRIMARY KEY (`item_id`, `stripe`)
+);
+
+CREATE TABLE `promotion`(
+    `id` INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    `name` VARCHAR(100) NOT NULL,
+    `type` VARCHAR(20) NOT NULL,
+    `buyqty` INT NULL,
+    `payqty` INT NULL,
+    `percentage` INT NULL,
+    `price` DECIMAL(10,2) NULL,
+    `dostart` DATE NULL,
+    `doend` DATE NULL,
+    `tocreation` DATETIME NULL,
+    `creator_id` INT NULL
+);
+
+CREATE TABLE `promotionitem`(
+    `promotion_id` INT NOT NULL,
+    `item_id` INT NOT NULL,
+    PRIMARY KEY (`promotion_id`, `item_id`)
+);
+
+CREATE TABLE `reorderitem`(
+    `item_id` INT NOT NULL PRIMARY KEY,
+    `onhand` INT NOT NULL,
+    `rop` INT NOT NULL,
+    `todetected` DATETIME NOT NULL,
+    `purchasedraft_id` INT NULL,
+    INDEX `index_reorderitem_purchasedraft_id` (`purchasedraft_id`)
+);
+
+CREATE TABLE `purchasedraft`(
+    `id` INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    `supplier_id` INT NOT NULL,
+    `tocreation` DATETIME NOT NULL
+);
+
+CREATE TABLE `purchasedraftitem`(
+    `id` INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    `purchasedraft_id` INT NOT NULL,
+    `item_id` INT NOT NULL,
+    `qty` INT NOT NULL,
+    `unitprice` DECIMAL(10,2) NULL,
+    INDEX `index_purchasedraftitem_purchasedraft_id` (`purchasedraft_id`)
+);
+
+CREATE TABLE `itemvelocity`(
+    `item_id` INT NOT NULL PRIMARY KEY,
+    `day` INT NOT NULL,
+    `pending` DOUBLE NOT NULL,
+    `rate` DOUBLE NOT NULL,
+    `variance` DOUBLE NOT NULL,
+    `rop` INT NOT NULL
+);
+
 
 
 -- primary key definitions
@@ -151,6 +248,10 @@ ALTER TABLE `notification` ADD CONSTRAINT pk_notification PRIMARY KEY (`id`);
 ALTER TABLE `token` ADD CONSTRAINT pk_token PRIMARY KEY (`id`);
 ALTER TABLE `servicelog` ADD CONSTRAINT pk_servicelog PRIMARY KEY (`id`);
 ALTER TABLE `file` ADD CONSTRAINT pk_file PRIMARY KEY (`id`);
+ALTER TABLE `file` ADD INDEX index_file_hash (`hash`);
+ALTER TABLE `file` ADD INDEX index_file_thumbnailhash (`thumbnailhash`);
+ALTER TABLE `filethumbnail` ADD CONSTRAINT pk_filethumbnail PRIMARY KEY (`file_id`,`size`);
+ALTER TABLE `filethumbnail` ADD INDEX index_filethumbnail_hash (`hash`);
 
 
 -- unique key definitions
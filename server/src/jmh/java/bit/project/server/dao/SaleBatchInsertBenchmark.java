@@ -0,0 +1,147 @@
+package bit.project.server.dao;
+
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Sale;
+import bit.project.server.entity.Saleitem;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists an upload of 200 sales of 5 lines each. perSale saves every sale in a transaction of its own through
+ * Hibernate, as POST /sales does; batch inserts them all with SaleBatchInsertImpl, as POST /sales/batch does.
+ * Scores are sales per second.
+ * By default the database is an in-memory H2 database in MySQL mode, which runs in process, so the round trips and
+ * commits that batching saves on a MySQL server are not measured. To measure against MySQL, pass the url of an empty
+ * database, whose tables are dropped and created, with the same rewriteBatchedStatements option as the application:
+ * ./gradlew jmhJar && java -jar build/libs/server-0.0.1-SNAPSHOT-jmh.jar SaleBatchInsertBenchmark -p url="jdbc:mysql://localhost:3306/bench?rewriteBatchedStatements=true" -p username=root -p password=1234
+ * Run with ./gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaleBatchInsertBenchmark {
+
+    private static final int SALES = 200;
+    private static final int LINES = 5;
+    private static final int ITEMS = 100;
+
+    @Param("jdbc:h2:mem:sales;MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+    public String url;
+
+    @Param("sa")
+    public String username;
+
+    @Param("")
+    public String password;
+
+    private HikariDataSource dataSource;
+    private EntityManagerFactory entityManagerFactory;
+    private AnnotationConfigApplicationContext context;
+    private SaleBatchInsert saleBatchInsert;
+    private TransactionTemplate transactionTemplate;
+    private long nextCode;
+
+    @Setup
+    public void setup(){
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setPackagesToScan("bit.project.server.entity");
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        // The naming strategies Spring Boot configures, so the tables are named as in the application
+        factoryBean.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create",
+                "hibernate.physical_naming_strategy", SpringPhysicalNamingStrategy.class.getName(),
+                "hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName()));
+        factoryBean.afterPropertiesSet();
+        entityManagerFactory = factoryBean.getObject();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        List<Object[]> itemRows = new ArrayList<>();
+        for (int i = 1; i <= ITEMS; i++) itemRows.add(new Object[]{i, "IT" + i});
+        jdbcTemplate.batchUpdate("insert into item(id, code) values(?,?)", itemRows);
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(JdbcTemplate.class, () -> jdbcTemplate);
+        context.registerBean(SaleBatchInsertImpl.class);
+        context.refresh();
+        saleBatchInsert = context.getBean(SaleBatchInsert.class);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @TearDown
+    public void tearDown(){
+        context.close();
+        entityManagerFactory.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SALES)
+    public void perSale(){
+        for (Sale sale : createSales()) {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            try {
+                entityManager.getTransaction().begin();
+                entityManager.persist(sale);
+                entityManager.getTransaction().commit();
+            } finally {
+                entityManager.close();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SALES)
+    public void batch(){
+        List<Sale> sales = createSales();
+        transactionTemplate.executeWithoutResult(status -> saleBatchInsert.insertAll(sales));
+    }
+
+    private List<Sale> createSales(){
+        List<Sale> sales = new ArrayList<>(SALES);
+        for (int i = 0; i < SALES; i++) {
+            Sale sale = new Sale();
+            sale.setCode(String.format("SA%08d", nextCode++));
+            sale.setTocreation(LocalDateTime.now());
+            sale.setDate(LocalDate.now());
+            sale.setTotal(new BigDecimal("500.00"));
+            List<Saleitem> saleitems = new ArrayList<>(LINES);
+            for (int l = 0; l < LINES; l++) {
+                Saleitem saleitem = new Saleitem();
+                saleitem.setSale(sale);
+                saleitem.setItem(new Item(1 + (i * LINES + l) % ITEMS));
+                saleitem.setQty(1);
+                saleitem.setUnitprice(new BigDecimal("100.00"));
+                saleitems.add(saleitem);
+            }
+            sale.setSaleitemList(saleitems);
+            sales.add(sale);
+        }
+        return sales;
+    }
+}
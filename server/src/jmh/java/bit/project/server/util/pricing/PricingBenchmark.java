@@ -0,0 +1,70 @@
+package bit.project.server.util.pricing;
+
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Promotion;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prices a typical 30-line basket against 200 item promotions and 20 bundles, as the till does for every sale.
+ * Run with ./gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PricingBenchmark {
+
+    private static final int LINES = 30;
+
+    private PromotionRules rules;
+    private final int[] itemIds = new int[LINES];
+    private final long[] unitPrices = new long[LINES];
+    private final int[] qtys = new int[LINES];
+    private final long[] lineDiscounts = new long[LINES];
+    private final int[] free = new int[LINES];
+
+    @Setup
+    public void setup(){
+        List<Promotion> promotions = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Promotion promotion = new Promotion(i);
+            if(i % 2 == 0){
+                promotion.setType(PromotionType.MULTI_BUY.name());
+                promotion.setBuyqty(3);
+                promotion.setPayqty(2);
+            }else{
+                promotion.setType(PromotionType.PERCENTAGE.name());
+                promotion.setPercentage(10);
+            }
+            promotion.setItemList(List.of(new Item(i * 5 + 1)));
+            promotions.add(promotion);
+        }
+        for (int i = 0; i < 20; i++) {
+            Promotion promotion = new Promotion(1000 + i);
+            promotion.setType(PromotionType.BUNDLE.name());
+            promotion.setPrice(new BigDecimal("250.00"));
+            promotion.setItemList(List.of(new Item(i * 7 + 2), new Item(i * 7 + 3)));
+            promotions.add(promotion);
+        }
+        rules = PromotionRules.compile(promotions, LocalDate.now());
+
+        for (int i = 0; i < LINES; i++) {
+            itemIds[i] = i * 3 + 1;
+            unitPrices[i] = 9950 + i * 125;
+            qtys[i] = 1 + i % 4;
+        }
+    }
+
+    @Benchmark
+    public long priceBasket(){
+        return rules.apply(LINES, itemIds, unitPrices, qtys, lineDiscounts, free);
+    }
+}
@@ -1,5 +1,7 @@
 package bit.project.server;
 
+import bit.project.server.util.analytics.SalesCube;
+import bit.project.server.util.search.SearchIndex;
 import bit.project.server.util.seed.Seeder;
 import bit.project.server.util.trigger.TriggerInjector;
 import org.springframework.boot.SpringApplication;
@@ -19,6 +21,12 @@ public class Application {
 
 		TriggerInjector triggerInjector = context.getBean(TriggerInjector.class);
 		triggerInjector.inject();
+
+		SearchIndex searchIndex = context.getBean(SearchIndex.class);
+		searchIndex.buildIfEmpty();
+
+		SalesCube salesCube = context.getBean(SalesCube.class);
+		salesCube.build();
 	}
 
 }
@@ -54,7 +54,13 @@ public enum UsecaseList{
     @SystemModule("Salary") SHOW_SALARY_DETAILS(43),
     @SystemModule("Salary") ADD_SALARY(44),
     @SystemModule("Salary") UPDATE_SALARY(45),
-    @SystemModule("Salary") DELETE_SALARY(46);
+    @SystemModule("Salary") DELETE_SALARY(46),
+
+    @SystemModule("Promotion") SHOW_ALL_PROMOTIONS(47),
+    @SystemModule("Promotion") ADD_PROMOTION(48),
+    @SystemModule("Promotion") DELETE_PROMOTION(49),
+
+    @SystemModule("Sale") SHOW_SALE_ANALYTICS(50);
 
     public final int value;
 
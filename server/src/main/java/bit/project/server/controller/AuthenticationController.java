@@ -47,7 +47,7 @@ public class AuthenticationController {
             Optional<Token> tokenOptional = tokenDao.findById(id);
             if(tokenOptional.isEmpty()) return;
             Token token = tokenOptional.get();
-            if(!token.getUser().equals(loginUser)) throw new NoPrivilegeException("Unauthorized Request");
+            if(!token.getUser().getId().equals(loginUser.getId())) throw new NoPrivilegeException("Unauthorized Request");
             accessControlManager.destroyToken(token);
         }
     }
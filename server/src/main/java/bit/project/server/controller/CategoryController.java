@@ -1,25 +1,24 @@
 package bit.project.server.controller;
 
-import bit.project.server.dao.CategoryDao;
 import bit.project.server.entity.Category;
+import bit.project.server.util.reference.ReferenceData;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.CrossOrigin;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 @CrossOrigin
 @RestController
 @RequestMapping("/categories")
-public class CategoryController {
+public class CategoryController{
 
     @Autowired
-    private CategoryDao categoryDao;
+    private ReferenceData referenceData;
 
     @GetMapping
-    public List<Category> getAll(){
-        return categoryDao.findAll();
+    public void getAll(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        referenceData.serve(Category.class, request, response);
     }
 }
\ No newline at end of file
@@ -12,6 +12,7 @@ import bit.project.server.util.dto.ClientToken;
 import bit.project.server.util.dto.LoginRequest;
 import org.springframework.web.bind.annotation.*;
 import bit.project.server.util.security.Userstatus;
+import bit.project.server.util.notification.NotificationHub;
 import java.lang.reflect.InvocationTargetException;
 import bit.project.server.util.validation.EntityValidator;
 import bit.project.server.util.security.AccessControlManager;
@@ -37,6 +38,9 @@ public class ConfigurationController {
     @Autowired
     NotificationDao notificationDao;
 
+    @Autowired
+    NotificationHub notificationHub;
+
     @Autowired
     Seeder seeder;
 
@@ -79,6 +83,7 @@ public class ConfigurationController {
         notification.setDosend(LocalDateTime.now());
         notification.setMessage("Successfully setup administrator's password");
         notificationDao.save(notification);
+        notificationHub.published(notification);
 
         return authenticationController.generate(loginRequest);
     }
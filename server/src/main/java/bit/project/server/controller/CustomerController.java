@@ -5,15 +5,18 @@ import bit.project.server.dao.CustomerDao;
 import bit.project.server.entity.Customer;
 import bit.project.server.entity.Employee;
 import bit.project.server.entity.User;
+import bit.project.server.util.dashboard.DashboardCounters;
+import bit.project.server.util.dto.CursorPage;
 import bit.project.server.util.dto.PageQuery;
 import bit.project.server.util.dto.ResourceLink;
 import bit.project.server.util.exception.ConflictException;
 import bit.project.server.util.exception.DataValidationException;
 import bit.project.server.util.exception.ObjectNotFoundException;
 import bit.project.server.util.helper.CodeGenerator;
-import bit.project.server.util.helper.PageHelper;
-import bit.project.server.util.helper.PersistHelper;
+import bit.project.server.util.helper.Paginator;
+import bit.project.server.util.search.SearchIndex;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.jpasupplement.SearchSpecification;
 import bit.project.server.util.validation.EntityValidator;
 import bit.project.server.util.validation.ValidationErrorBag;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,10 +30,7 @@ import org.springframework.web.bind.annotation.*;
 import javax.persistence.RollbackException;
 import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @CrossOrigin
 @RestController
@@ -43,9 +43,18 @@ public class CustomerController {
     @Autowired
     private AccessControlManager accessControlManager;
 
+    @Autowired
+    private Paginator paginator;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
     @Autowired
     private CodeGenerator codeGenerator;
 
+    @Autowired
+    private DashboardCounters dashboardCounters;
+
     private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.DESC, "tocreation");
     private final CodeGenerator.CodeGeneratorConfig codeConfig;
 
@@ -61,38 +70,25 @@ public class CustomerController {
     public Page<Customer> getAll(PageQuery pageQuery, HttpServletRequest request) {
         accessControlManager.authorize(request, "No privilege to get all customers", UsecaseList.SHOW_ALL_CUSTOMERS);
 
+        PageRequest pageRequest = paginator.getPageRequest(pageQuery, DEFAULT_SORT);
+
         if(pageQuery.isEmptySearch()){
-            return customerDao.findAll(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+            return customerDao.findAll(pageRequest);
         }
 
-        String code = pageQuery.getSearchParam("code");
-        String name = pageQuery.getSearchParam("name");
-        String contact1 = pageQuery.getSearchParam("contact1");
-        String email = pageQuery.getSearchParam("email");
-
-        List<Customer> customers = customerDao.findAll(DEFAULT_SORT);
-        Stream<Customer> stream = customers.parallelStream();
-
-        List<Customer> filteredCustomers = stream.filter(customer -> {
-            if(code!=null)
-                if(!customer.getCode().toLowerCase().contains(code.toLowerCase())) return false;
-            if(name!=null)
-                if(!customer.getName().toLowerCase().contains(name.toLowerCase())) return false;
-            if(contact1!=null)
-                if(!customer.getContact1().toLowerCase().contains(contact1.toLowerCase())) return false;
-            if(email!=null)
-                if(!customer.getEmail().toLowerCase().contains(email.toLowerCase())) return false;
-            return true;
-        }).collect(Collectors.toList());
-
-        return PageHelper.getAsPage(filteredCustomers, pageQuery.getPage(), pageQuery.getSize());
+        return customerDao.findAll(getSpecification(pageQuery), pageRequest);
+    }
 
+    @GetMapping(params = "cursor")
+    public CursorPage<Customer> getAllByCursor(PageQuery pageQuery, HttpServletRequest request) {
+        accessControlManager.authorize(request, "No privilege to get all customers", UsecaseList.SHOW_ALL_CUSTOMERS);
+        return paginator.getCursorPage(Customer.class, getSpecification(pageQuery), pageQuery, "Customer.list");
     }
 
     @GetMapping("/basic")
     public Page<Customer> getAllBasic(PageQuery pageQuery, HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get all customers' basic data", UsecaseList.SHOW_ALL_CUSTOMERS);
-        return customerDao.findAllBasic(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+        return customerDao.findAllBasic(paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/{id}")
@@ -109,7 +105,11 @@ public class CustomerController {
         accessControlManager.authorize(request, "No privilege to delete customers", UsecaseList.DELETE_CUSTOMER);
 
         try{
-            if(customerDao.existsById(id)) customerDao.deleteById(id);
+            if(customerDao.existsById(id)){
+                customerDao.deleteById(id);
+                searchIndex.delete(SearchIndex.Type.CUSTOMER, id);
+                dashboardCounters.invalidate();
+            }
         }catch (DataIntegrityViolationException | RollbackException e){
             throw new ConflictException("Cannot delete. Because this customer already used in another module");
         }
@@ -117,7 +117,7 @@ public class CustomerController {
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ResourceLink add(@RequestBody Customer customer, HttpServletRequest request) throws InterruptedException {
+    public ResourceLink add(@RequestBody Customer customer, HttpServletRequest request) {
         User authUser = accessControlManager.authorize(request, "No privilege to add new customer", UsecaseList.ADD_CUSTOMER);
 
         customer.setTocreation(LocalDateTime.now());
@@ -136,10 +136,10 @@ public class CustomerController {
 
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
-        PersistHelper.save(()->{
-            customer.setCode(codeGenerator.getNextId(codeConfig));
-            return customerDao.save(customer);
-        });
+        customer.setCode(codeGenerator.getNextId(codeConfig));
+        customerDao.save(customer);
+        searchIndex.index(customer);
+        dashboardCounters.created(DashboardCounters.Kpi.CUSTOMER, customer.getTocreation(), null);
 
         return new ResourceLink(customer.getId(), "/customers/"+customer.getId());
     }
@@ -172,7 +172,15 @@ public class CustomerController {
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
         customer = customerDao.save(customer);
+        searchIndex.index(customer);
         return new ResourceLink(customer.getId(), "/customers/"+customer.getId());
     }
 
+    private SearchSpecification<Customer> getSpecification(PageQuery pageQuery){
+        return new SearchSpecification<Customer>(pageQuery)
+                .contains("code")
+                .contains("name")
+                .contains("contact1")
+                .contains("email");
+    }
 }
\ No newline at end of file
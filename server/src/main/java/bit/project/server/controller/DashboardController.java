@@ -1,25 +1,20 @@
 package bit.project.server.controller;
 
 import bit.project.server.UsecaseList;
-import bit.project.server.dao.CustomerDao;
-import bit.project.server.dao.ItemDao;
-import bit.project.server.dao.PurchaseDao;
-import bit.project.server.dao.SaleDao;
-import bit.project.server.entity.Customer;
-import bit.project.server.entity.Item;
-import bit.project.server.entity.Purchase;
-import bit.project.server.entity.Sale;
+import bit.project.server.util.dashboard.DashboardCounters;
+import bit.project.server.util.dto.DashboardSummary;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.security.UserPrincipal;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
-import java.time.LocalDateTime;
 import java.util.HashMap;
-import java.util.List;
 
 @CrossOrigin
 @RestController
@@ -27,73 +22,57 @@ import java.util.List;
 public class DashboardController {
 
     @Autowired
-    public CustomerDao customerDao;
+    public DashboardCounters dashboardCounters;
 
     @Autowired
-    public PurchaseDao purchaseDao;
-
-    @Autowired
-    public ItemDao itemDao;
+    public AccessControlManager accessControlManager;
 
-    @Autowired
-    public SaleDao saleDao;
+    /**
+     * All dashboard figures in one response. Figures the user has no privilege to see are left out.
+     */
+    @GetMapping("/summary")
+    public DashboardSummary getSummary(HttpServletRequest request){
+        return dashboardCounters.getSummary(authorize(request));
+    }
 
-    @Autowired
-    public AccessControlManager accessControlManager;
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(HttpServletRequest request){
+        return dashboardCounters.subscribe(authorize(request));
+    }
 
     @GetMapping("/recent-customer-count")
     public HashMap getRecentCustomerCount(HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get recent customer count", UsecaseList.SHOW_ALL_CUSTOMERS);
-
-        LocalDateTime timeWeekAgo = LocalDateTime.now().minusWeeks(1);
-        List<Customer> recentCustomers = customerDao.findAllByTocreationAfter(timeWeekAgo);
-
-        HashMap<String, Integer> data = new HashMap<>();
-
-        data.put("count", recentCustomers.size());
-
-        return data;
+        return getCount(dashboardCounters.getSummary(accessControlManager.getPrincipal(request)).getRecentCustomerCount());
     }
 
     @GetMapping("/recent-purchase-count")
     public HashMap getRecentPurchaseCount(HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get recent purchase count", UsecaseList.SHOW_ALL_PURCHASES);
-
-        LocalDateTime timeWeekAgo = LocalDateTime.now().minusWeeks(1);
-        List<Purchase> recentPurchases = purchaseDao.findAllByTocreationAfter(timeWeekAgo);
-
-        HashMap<String, Integer> data = new HashMap<>();
-
-        data.put("count", recentPurchases.size());
-
-        return data;
+        return getCount(dashboardCounters.getSummary(accessControlManager.getPrincipal(request)).getRecentPurchaseCount());
     }
 
     @GetMapping("/recent-item-count")
     public HashMap getRecentItemCount(HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get recent item count", UsecaseList.SHOW_ALL_ITEMS);
-
-        LocalDateTime timeWeekAgo = LocalDateTime.now().minusWeeks(1);
-        List<Item> recentItems = itemDao.findAllByTocreationAfter(timeWeekAgo);
-
-        HashMap<String, Integer> data = new HashMap<>();
-
-        data.put("count", recentItems.size());
-
-        return data;
+        return getCount(dashboardCounters.getSummary(accessControlManager.getPrincipal(request)).getRecentItemCount());
     }
 
     @GetMapping("/recent-sale-count")
     public HashMap getRecentSaleCount(HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get recent sale count", UsecaseList.SHOW_ALL_SALES);
+        return getCount(dashboardCounters.getSummary(accessControlManager.getPrincipal(request)).getRecentSaleCount());
+    }
 
-        LocalDateTime timeWeekAgo = LocalDateTime.now().minusWeeks(1);
-        List<Sale> recentSales = saleDao.findAllByTocreationAfter(timeWeekAgo);
-
-        HashMap<String, Integer> data = new HashMap<>();
-
-        data.put("count", recentSales.size());
+    private UserPrincipal authorize(HttpServletRequest request){
+        accessControlManager.authorize(request, "No privilege to see the dashboard",
+                UsecaseList.SHOW_ALL_CUSTOMERS, UsecaseList.SHOW_ALL_PURCHASES, UsecaseList.SHOW_ALL_ITEMS, UsecaseList.SHOW_ALL_SALES);
+        return accessControlManager.getPrincipal(request);
+    }
 
+    private static HashMap<String, Long> getCount(Long count){
+        HashMap<String, Long> data = new HashMap<>();
+        data.put("count", count);
         return data;
     }
 
@@ -1,35 +1,36 @@
 package bit.project.server.controller;
 
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Optional;
 import java.time.LocalDateTime;
-import java.util.stream.Stream;
-import java.util.stream.Collectors;
 import bit.project.server.UsecaseList;
 import bit.project.server.dao.FileDao;
 import bit.project.server.entity.File;
 import bit.project.server.entity.User;
 import bit.project.server.entity.Employee;
 import bit.project.server.dao.EmployeeDao;
+import bit.project.server.util.blob.FileStorage;
 import bit.project.server.util.helper.FileHelper;
 import org.springframework.http.HttpStatus;
 import javax.persistence.RollbackException;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Page;
 import javax.servlet.http.HttpServletRequest;
+import bit.project.server.util.dto.CursorPage;
 import bit.project.server.util.dto.PageQuery;
 import bit.project.server.util.dto.ResourceLink;
 import bit.project.server.entity.Employeestatus;
 import org.springframework.web.bind.annotation.*;
-import bit.project.server.util.helper.PageHelper;
 import org.springframework.data.domain.PageRequest;
-import bit.project.server.util.helper.PersistHelper;
 import bit.project.server.util.helper.CodeGenerator;
 import bit.project.server.util.validation.EntityValidator;
 import bit.project.server.util.exception.ConflictException;
 import bit.project.server.util.validation.ValidationErrorBag;
+import bit.project.server.util.helper.Paginator;
+import bit.project.server.util.search.SearchIndex;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.jpasupplement.SearchSpecification;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import bit.project.server.util.exception.DataValidationException;
@@ -46,9 +47,18 @@ public class EmployeeController{
     @Autowired
     private FileDao fileDao;
 
+    @Autowired
+    private FileStorage fileStorage;
+
     @Autowired
     private AccessControlManager accessControlManager;
 
+    @Autowired
+    private Paginator paginator;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
     @Autowired
     private CodeGenerator codeGenerator;
 
@@ -67,38 +77,25 @@ public class EmployeeController{
     public Page<Employee> getAll(PageQuery pageQuery, HttpServletRequest request) {
         accessControlManager.authorize(request, "No privilege to get all employees", UsecaseList.SHOW_ALL_EMPLOYEES);
 
+        PageRequest pageRequest = paginator.getPageRequest(pageQuery, DEFAULT_SORT);
+
         if(pageQuery.isEmptySearch()){
-            return employeeDao.findAll(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+            return employeeDao.findAll(pageRequest);
         }
 
-        String code = pageQuery.getSearchParam("code");
-        String callingname = pageQuery.getSearchParam("callingname");
-        String nic = pageQuery.getSearchParam("nic");
-        Integer employeestatusId = pageQuery.getSearchParamAsInteger("employeestatus");
-
-        List<Employee> employees = employeeDao.findAll(DEFAULT_SORT);
-        Stream<Employee> stream = employees.parallelStream();
-
-        List<Employee> filteredEmployees = stream.filter(employee -> {
-            if(code!=null)
-                if(!employee.getCode().toLowerCase().contains(code.toLowerCase())) return false;
-            if(callingname!=null)
-                if(!employee.getCallingname().toLowerCase().contains(callingname.toLowerCase())) return false;
-            if(nic!=null)
-                if(!employee.getNic().toLowerCase().contains(nic.toLowerCase())) return false;
-            if(employeestatusId!=null)
-                if(!employee.getEmployeestatus().getId().equals(employeestatusId)) return false;
-            return true;
-        }).collect(Collectors.toList());
-
-        return PageHelper.getAsPage(filteredEmployees, pageQuery.getPage(), pageQuery.getSize());
+        return employeeDao.findAll(getSpecification(pageQuery), pageRequest);
+    }
 
+    @GetMapping(params = "cursor")
+    public CursorPage<Employee> getAllByCursor(PageQuery pageQuery, HttpServletRequest request) {
+        accessControlManager.authorize(request, "No privilege to get all employees", UsecaseList.SHOW_ALL_EMPLOYEES);
+        return paginator.getCursorPage(Employee.class, getSpecification(pageQuery), pageQuery, "Employee.list");
     }
 
     @GetMapping("/basic")
     public Page<Employee> getAllBasic(PageQuery pageQuery, HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get all employees' basic data", UsecaseList.SHOW_ALL_EMPLOYEES);
-        return employeeDao.findAllBasic(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+        return employeeDao.findAllBasic(paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/{id}")
@@ -115,7 +112,10 @@ public class EmployeeController{
         accessControlManager.authorize(request, "No privilege to delete employees", UsecaseList.DELETE_EMPLOYEE);
 
         try{
-            if(employeeDao.existsById(id)) employeeDao.deleteById(id);
+            if(employeeDao.existsById(id)){
+                employeeDao.deleteById(id);
+                searchIndex.delete(SearchIndex.Type.EMPLOYEE, id);
+            }
         }catch (DataIntegrityViolationException | RollbackException e){
             throw new ConflictException("Cannot delete. Because this employee already used in another module");
         }
@@ -123,7 +123,7 @@ public class EmployeeController{
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ResourceLink add(@RequestBody Employee employee, HttpServletRequest request) throws InterruptedException {
+    public ResourceLink add(@RequestBody Employee employee, HttpServletRequest request) {
         User authUser = accessControlManager.authorize(request, "No privilege to add new employee", UsecaseList.ADD_EMPLOYEE);
 
         employee.setTocreation(LocalDateTime.now());
@@ -153,10 +153,9 @@ public class EmployeeController{
 
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
-        PersistHelper.save(()->{
-            employee.setCode(codeGenerator.getNextId(codeConfig));
-            return employeeDao.save(employee);
-        });
+        employee.setCode(codeGenerator.getNextId(codeConfig));
+        employeeDao.save(employee);
+        searchIndex.index(employee);
 
         return new ResourceLink(employee.getId(), "/employees/"+employee.getId());
     }
@@ -203,11 +202,12 @@ public class EmployeeController{
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
         employee = employeeDao.save(employee);
+        searchIndex.index(employee);
         return new ResourceLink(employee.getId(), "/employees/"+employee.getId());
     }
 
     @GetMapping("/{id}/photo")
-    public HashMap<String, String> getPhoto(@PathVariable Integer id, HttpServletRequest request){
+    public HashMap<String, String> getPhoto(@PathVariable Integer id, HttpServletRequest request) throws IOException {
         accessControlManager.authorize(request, "No privilege to get employee Photo", UsecaseList.SHOW_EMPLOYEE_DETAILS);
 
         Employee employee = getEmployee(id);
@@ -221,7 +221,7 @@ public class EmployeeController{
         File photo = optionalFile.get();
         HashMap<String, String> data = new HashMap<>();
 
-        data.put("file", FileHelper.byteArrayToBase64(photo.getFile(), photo.getFilemimetype()));
+        data.put("file", FileHelper.byteArrayToBase64(fileStorage.getBytes(photo), photo.getFilemimetype()));
 
         return data;
     }
@@ -231,4 +231,11 @@ public class EmployeeController{
         return employeeOptional.get();
     }
 
+    private SearchSpecification<Employee> getSpecification(PageQuery pageQuery){
+        return new SearchSpecification<Employee>(pageQuery)
+                .contains("code")
+                .contains("callingname")
+                .contains("nic")
+                .equal("employeestatus", "employeestatus.id");
+    }
 }
\ No newline at end of file
@@ -3,20 +3,30 @@ package bit.project.server.controller;
 import bit.project.server.UsecaseList;
 import bit.project.server.dao.FileDao;
 import bit.project.server.dao.ItemDao;
+import bit.project.server.dao.StockmovementDao;
 import bit.project.server.entity.File;
 import bit.project.server.entity.Item;
 import bit.project.server.entity.Itemstatus;
+import bit.project.server.entity.Stockmovement;
 import bit.project.server.entity.User;
+import bit.project.server.util.dashboard.DashboardCounters;
+import bit.project.server.util.dto.CursorPage;
 import bit.project.server.util.dto.PageQuery;
 import bit.project.server.util.dto.ResourceLink;
 import bit.project.server.util.exception.ConflictException;
 import bit.project.server.util.exception.DataValidationException;
 import bit.project.server.util.exception.ObjectNotFoundException;
 import bit.project.server.util.helper.CodeGenerator;
+import bit.project.server.util.blob.FileStorage;
 import bit.project.server.util.helper.FileHelper;
-import bit.project.server.util.helper.PageHelper;
-import bit.project.server.util.helper.PersistHelper;
+import bit.project.server.util.helper.Paginator;
+import bit.project.server.util.search.SearchIndex;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.jpasupplement.SearchSpecification;
+import bit.project.server.util.stock.StockChange;
+import bit.project.server.util.stock.ReorderEngine;
+import bit.project.server.util.stock.SalesVelocity;
+import bit.project.server.util.stock.StockLedger;
 import bit.project.server.util.validation.EntityValidator;
 import bit.project.server.util.validation.ValidationErrorBag;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,16 +38,13 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
 import javax.persistence.RollbackException;
-import javax.persistence.Tuple;
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @CrossOrigin
 @RestController
@@ -50,10 +57,27 @@ public class ItemController {
     @Autowired
     private AccessControlManager accessControlManager;
 
+    @Autowired
+    private Paginator paginator;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
     @Autowired
     private CodeGenerator codeGenerator;
 
     @Autowired private FileDao fileDao;
+    @Autowired private FileStorage fileStorage;
+
+    @Autowired private StockLedger stockLedger;
+
+    @Autowired private ReorderEngine reorderEngine;
+
+    @Autowired private SalesVelocity salesVelocity;
+
+    @Autowired private StockmovementDao stockmovementDao;
+
+    @Autowired private DashboardCounters dashboardCounters;
 
     private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.DESC, "tocreation");
     private final CodeGenerator.CodeGeneratorConfig codeConfig;
@@ -70,51 +94,36 @@ public class ItemController {
     public Page<Item> getAll(PageQuery pageQuery, HttpServletRequest request) {
         accessControlManager.authorize(request, "No privilege to get all items", UsecaseList.SHOW_ALL_ITEMS);
 
-        if(pageQuery.isEmptySearch()){
-            return itemDao.findAll(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
-        }
-
-        String code = pageQuery.getSearchParam("code");
-        String name = pageQuery.getSearchParam("name");
-        Integer categoryId = pageQuery.getSearchParamAsInteger("category");
-        Integer itemstatusId = pageQuery.getSearchParamAsInteger("itemstatus");
-
-        List<Item> items = itemDao.findAll(DEFAULT_SORT);
-        Stream<Item> stream = items.parallelStream();
+        PageRequest pageRequest = paginator.getPageRequest(pageQuery, DEFAULT_SORT);
 
-        List<Item> filteredItems = stream.filter(item -> {
-            if(code!=null)
-                if(!item.getCode().toLowerCase().contains(code.toLowerCase())) return false;
-            if(name!=null)
-                if(!item.getName().toLowerCase().contains(name.toLowerCase())) return false;
-            if(categoryId!=null)
-                if(!item.getCategory().getId().equals(categoryId)) return false;
-            if(itemstatusId!=null)
-                if(!item.getItemstatus().getId().equals(itemstatusId)) return false;
-            return true;
-        }).collect(Collectors.toList());
+        Page<Item> items = pageQuery.isEmptySearch()
+                ? itemDao.findAll(pageRequest)
+                : itemDao.findAll(getSpecification(pageQuery), pageRequest);
 
-        return PageHelper.getAsPage(filteredItems, pageQuery.getPage(), pageQuery.getSize());
+        stockLedger.applyOnHand(items.getContent());
+        return items;
+    }
 
+    @GetMapping(params = "cursor")
+    public CursorPage<Item> getAllByCursor(PageQuery pageQuery, HttpServletRequest request) {
+        accessControlManager.authorize(request, "No privilege to get all items", UsecaseList.SHOW_ALL_ITEMS);
+        CursorPage<Item> items = paginator.getCursorPage(Item.class, getSpecification(pageQuery), pageQuery, "Item.list");
+        stockLedger.applyOnHand(items.getContent());
+        return items;
     }
 
     @GetMapping("/basic")
     public Page<Item> getAllBasic(PageQuery pageQuery, HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get all items' basic data", UsecaseList.SHOW_ALL_ITEMS);
-        return itemDao.findAllBasic(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+        Page<Item> items = itemDao.findAllBasic(paginator.getPageRequest(pageQuery, DEFAULT_SORT));
+        stockLedger.applyOnHand(items.getContent());
+        return items;
     }
 
     @GetMapping("/basic/{supplierId}")
     public List<Item> getAllBasicBySupplier(HttpServletRequest request, @PathVariable Integer supplierId){
         accessControlManager.authorize(request, "No privilege to get all items' basic data", UsecaseList.SHOW_ALL_ITEMS);
-        List<Tuple> tuples = itemDao.findAllBasicBySupplier(supplierId);
-        List<Item> items = new ArrayList<>();
-
-        for (Tuple tuple: tuples){
-            Item i = itemDao.findById((Integer) tuple.get(0)).get();
-            items.add(new Item(i.getId(), i.getCode(), i.getName(), i.getPrice(), i.getQty()));
-        }
-        return items;
+        return stockLedger.applyOnHand(itemDao.findAllBasicBySupplier(supplierId));
     }
 
     @GetMapping("/{id}")
@@ -122,7 +131,13 @@ public class ItemController {
         accessControlManager.authorize(request, "No privilege to get item", UsecaseList.SHOW_ITEM_DETAILS, UsecaseList.UPDATE_ITEM);
         Optional<Item> optionalItem = itemDao.findById(id);
         if(optionalItem.isEmpty()) throw new ObjectNotFoundException("Item not found");
-        return optionalItem.get();
+        return salesVelocity.apply(stockLedger.applyOnHand(optionalItem.get()));
+    }
+
+    @GetMapping("/{id}/stockmovements")
+    public Page<Stockmovement> getStockmovements(@PathVariable Integer id, PageQuery pageQuery, HttpServletRequest request) {
+        accessControlManager.authorize(request, "No privilege to get item stock history", UsecaseList.SHOW_ITEM_DETAILS);
+        return stockmovementDao.findAllByItem(getItem(id), paginator.getPageRequest(pageQuery, Sort.by(Sort.Direction.DESC, "id")));
     }
 
     @DeleteMapping("/{id}")
@@ -131,7 +146,12 @@ public class ItemController {
         accessControlManager.authorize(request, "No privilege to delete items", UsecaseList.DELETE_ITEM);
 
         try{
-            if(itemDao.existsById(id)) itemDao.deleteById(id);
+            if(itemDao.existsById(id)){
+                itemDao.deleteById(id);
+                searchIndex.delete(SearchIndex.Type.ITEM, id);
+                dashboardCounters.invalidate();
+                reorderEngine.changed(id);
+            }
         }catch (DataIntegrityViolationException | RollbackException e){
             throw new ConflictException("Cannot delete. Because this item already used in another module");
         }
@@ -139,7 +159,7 @@ public class ItemController {
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ResourceLink add(@RequestBody Item item, HttpServletRequest request) throws InterruptedException {
+    public ResourceLink add(@RequestBody Item item, HttpServletRequest request) {
         User authUser = accessControlManager.authorize(request, "No privilege to add new item", UsecaseList.ADD_ITEM);
 
         item.setTocreation(LocalDateTime.now());
@@ -158,10 +178,12 @@ public class ItemController {
 
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
-        PersistHelper.save(()->{
-            item.setCode(codeGenerator.getNextId(codeConfig));
-            return itemDao.save(item);
-        });
+        item.setCode(codeGenerator.getNextId(codeConfig));
+        itemDao.save(item);
+        stockLedger.recordOpening(item);
+        searchIndex.index(item);
+        dashboardCounters.created(DashboardCounters.Kpi.ITEM, item.getTocreation(), null);
+        reorderEngine.changed(item.getId());
 
         return new ResourceLink(item.getId(), "/items/"+item.getId());
     }
@@ -193,12 +215,20 @@ public class ItemController {
 
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
-        item = itemDao.save(item);
+        StockChange stockChange = new StockChange(StockChange.Type.ADJUSTMENT, oldItem.getCode());
+        stockChange.setTarget(id, item.getQty());
+        // qty is not written by JPA, and the cached item has to match the row
+        item.setQty(oldItem.getQty());
+
+        Item updatedItem = item;
+        item = stockLedger.save(() -> itemDao.save(updatedItem), stockChange);
+        reorderEngine.changed(item.getId());
+        searchIndex.index(item);
         return new ResourceLink(item.getId(), "/items/"+item.getId());
     }
 
     @GetMapping("/{id}/photo")
-    public HashMap<String, String> getPhoto(@PathVariable Integer id, HttpServletRequest request){
+    public HashMap<String, String> getPhoto(@PathVariable Integer id, HttpServletRequest request) throws IOException {
         accessControlManager.authorize(request, "No privilege to get item photo", UsecaseList.SHOW_ITEM_DETAILS);
 
         Item item = getItem(id);
@@ -212,7 +242,7 @@ public class ItemController {
         File photo = optionalFile.get();
         HashMap<String, String> data = new HashMap<>();
 
-        data.put("file", FileHelper.byteArrayToBase64(photo.getFile(), photo.getFilemimetype()));
+        data.put("file", FileHelper.byteArrayToBase64(fileStorage.getBytes(photo), photo.getFilemimetype()));
 
         return data;
     }
@@ -221,4 +251,12 @@ public class ItemController {
         if(itemOptional.isEmpty()) throw new ObjectNotFoundException("Item not found");
         return itemOptional.get();
     }
+
+    private SearchSpecification<Item> getSpecification(PageQuery pageQuery){
+        return new SearchSpecification<Item>(pageQuery)
+                .contains("code")
+                .contains("name")
+                .equal("category", "category.id")
+                .equal("itemstatus", "itemstatus.id");
+    }
 }
\ No newline at end of file
@@ -3,21 +3,25 @@ package bit.project.server.controller;
 import bit.project.server.dao.NotificationDao;
 import bit.project.server.entity.Notification;
 import bit.project.server.entity.User;
+import bit.project.server.util.dto.NotificationAck;
 import bit.project.server.util.dto.PageQuery;
+import bit.project.server.util.exception.BadRequestException;
 import bit.project.server.util.exception.NoPrivilegeException;
 import bit.project.server.util.exception.ObjectNotFoundException;
+import bit.project.server.util.helper.Paginator;
+import bit.project.server.util.notification.NotificationHub;
 import bit.project.server.util.security.AccessControlManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 @CrossOrigin
 @RestController
@@ -25,30 +29,66 @@ import java.util.Optional;
 public class NotificationController {
 
     private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.DESC, "dosend");
+    private static final int MAX_ACK_SIZE = 1000;
     @Autowired private NotificationDao notificationDao;
     @Autowired private AccessControlManager accessControlManager;
+    @Autowired private NotificationHub notificationHub;
+    @Autowired private Paginator paginator;
 
     @GetMapping("/latest")
     public List<Notification> latest(HttpServletRequest request) {
         User authUser = accessControlManager.authenticate(request);
-        return notificationDao.findAllByUser( authUser, PageRequest.of(0, 4, DEFAULT_SORT)).getContent();
+        return notificationHub.getLatest(authUser);
     }
 
     @GetMapping("/unread/count")
     public HashMap<String, Long> unreadcount(HttpServletRequest request) {
         User authUser = accessControlManager.authenticate(request);
-        Long count = notificationDao.countByUserAndDoread(authUser, null);
-        HashMap<String, Long> data = new HashMap<>();
-        data.put("count", count);
+        return getUnreadCount(authUser);
+    }
 
-        return data;
+    @PutMapping("/delivered")
+    public HashMap<String, Long> setDeliveredDates(@RequestBody NotificationAck ack, HttpServletRequest request) {
+        User authUser = accessControlManager.authenticate(request);
+        validate(ack);
+
+        LocalDateTime now = LocalDateTime.now();
+        if(ack.getIds() != null) notificationDao.updateDodeliveredByUserAndIdIn(authUser, ack.getIds(), now);
+        else notificationDao.updateDodeliveredByUserAndDosendBefore(authUser, ack.getBefore(), now);
+
+        return getUnreadCount(authUser);
+    }
+
+    @PutMapping("/read")
+    public HashMap<String, Long> setReadDates(@RequestBody NotificationAck ack, HttpServletRequest request) {
+        User authUser = accessControlManager.authenticate(request);
+        validate(ack);
+
+        LocalDateTime now = LocalDateTime.now();
+        if(ack.getIds() != null){
+            Set<String> ids = new HashSet<>(ack.getIds());
+            int count = notificationDao.updateDoreadByUserAndIdIn(authUser, ids, now);
+            notificationHub.read(authUser, count, notification -> ids.contains(notification.getId()), now);
+        }else{
+            LocalDateTime before = ack.getBefore();
+            int count = notificationDao.updateDoreadByUserAndDosendBefore(authUser, before, now);
+            notificationHub.read(authUser, count, notification -> !notification.getDosend().isAfter(before), now);
+        }
+
+        return getUnreadCount(authUser);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(HttpServletRequest request) {
+        User authUser = accessControlManager.authenticate(request);
+        return notificationHub.subscribe(authUser);
     }
 
     @GetMapping
     public Page<Notification> all(PageQuery pageQuery, HttpServletRequest request) {
         User authUser = accessControlManager.authenticate(request);
         return notificationDao
-                .findAllByUser( authUser, PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+                .findAllByUser( authUser, paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/{id}")
@@ -88,8 +128,23 @@ public class NotificationController {
         if(!notification.getUser().getId().equals(authUser.getId()))
             throw new NoPrivilegeException("You have no privilege to update others' notifications");
 
+        if(notification.getDoread() != null) return;
+
         notification.setDoread(LocalDateTime.now());
         notificationDao.save(notification);
+        notificationHub.read(notification);
+    }
+
+    private HashMap<String, Long> getUnreadCount(User user){
+        HashMap<String, Long> data = new HashMap<>();
+        data.put("count", notificationHub.getUnreadCount(user));
+        return data;
+    }
+
+    private void validate(NotificationAck ack){
+        if(ack.getIds() == null && ack.getBefore() == null) throw new BadRequestException("Either ids or before is required");
+        if(ack.getIds() != null && ack.getIds().isEmpty()) throw new BadRequestException("At least one id is required");
+        if(ack.getIds() != null && ack.getIds().size() > MAX_ACK_SIZE) throw new BadRequestException("At most " + MAX_ACK_SIZE + " notifications can be acknowledged at once");
     }
 
 }
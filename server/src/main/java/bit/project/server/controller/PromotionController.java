@@ -0,0 +1,108 @@
+package bit.project.server.controller;
+
+import bit.project.server.UsecaseList;
+import bit.project.server.dao.ItemDao;
+import bit.project.server.dao.PromotionDao;
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Promotion;
+import bit.project.server.entity.User;
+import bit.project.server.util.dto.ResourceLink;
+import bit.project.server.util.exception.DataValidationException;
+import bit.project.server.util.pricing.PricingEngine;
+import bit.project.server.util.pricing.PromotionType;
+import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.validation.ValidationErrorBag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@CrossOrigin
+@RestController
+@RequestMapping("/promotions")
+public class PromotionController {
+
+    @Autowired
+    private PromotionDao promotionDao;
+
+    @Autowired
+    private ItemDao itemDao;
+
+    @Autowired
+    private AccessControlManager accessControlManager;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+
+    @GetMapping
+    public List<Promotion> getAll(HttpServletRequest request){
+        accessControlManager.authorize(request, "No privilege to get all promotions", UsecaseList.SHOW_ALL_PROMOTIONS);
+        return promotionDao.findAll(Sort.by(Sort.Direction.DESC, "tocreation"));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void delete(@PathVariable Integer id, HttpServletRequest request){
+        accessControlManager.authorize(request, "No privilege to delete promotions", UsecaseList.DELETE_PROMOTION);
+
+        if(promotionDao.existsById(id)){
+            promotionDao.deleteById(id);
+            pricingEngine.invalidate();
+        }
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public ResourceLink add(@RequestBody Promotion promotion, HttpServletRequest request) {
+        User authUser = accessControlManager.authorize(request, "No privilege to add new promotion", UsecaseList.ADD_PROMOTION);
+
+        promotion.setTocreation(LocalDateTime.now());
+        promotion.setCreator(authUser);
+        promotion.setId(null);
+
+        ValidationErrorBag errorBag = new ValidationErrorBag();
+        PromotionType type = promotion.getType() == null ? null : PromotionType.of(promotion.getType());
+
+        if(promotion.getName() == null || promotion.getName().isBlank()) errorBag.add("name", "Name is required");
+        if(type == null) errorBag.add("type", "Type should be one of MULTI_BUY, PERCENTAGE or BUNDLE");
+
+        if(type == PromotionType.MULTI_BUY){
+            if(promotion.getBuyqty() == null || promotion.getBuyqty() < 2) errorBag.add("buyqty", "Buy quantity should be at least 2");
+            else if(promotion.getPayqty() == null || promotion.getPayqty() < 0 || promotion.getPayqty() >= promotion.getBuyqty()) errorBag.add("payqty", "Pay quantity should be less than the buy quantity");
+        }
+        if(type == PromotionType.PERCENTAGE){
+            if(promotion.getPercentage() == null || promotion.getPercentage() < 1 || promotion.getPercentage() > 100) errorBag.add("percentage", "Percentage should be between 1 and 100");
+        }
+        if(type == PromotionType.BUNDLE){
+            if(promotion.getPrice() == null || promotion.getPrice().compareTo(BigDecimal.ZERO) < 0) errorBag.add("price", "Bundle price is required");
+        }
+
+        if(promotion.getDostart() != null && promotion.getDoend() != null && promotion.getDoend().isBefore(promotion.getDostart())){
+            errorBag.add("doend", "End date should not be before the start date");
+        }
+
+        Set<Integer> itemIds = new HashSet<>();
+        if(promotion.getItemList() != null) for (Item item : promotion.getItemList()) if(item != null && item.getId() != null) itemIds.add(item.getId());
+        if(itemIds.isEmpty() || (type == PromotionType.BUNDLE && itemIds.size() < 2)){
+            errorBag.add("itemList", type == PromotionType.BUNDLE ? "A bundle needs at least two items" : "At least one item is required");
+        }else if(itemDao.findAllIdsByIdIn(itemIds).size() != itemIds.size()){
+            errorBag.add("itemList", "Invalid item");
+        }
+
+        if(errorBag.count()>0) throw new DataValidationException(errorBag);
+
+        promotion.setType(type.name());
+        promotion.setItemList(itemDao.findAllById(itemIds));
+        promotionDao.save(promotion);
+        pricingEngine.invalidate();
+
+        return new ResourceLink(promotion.getId(), "/promotions/"+promotion.getId());
+    }
+}
@@ -1,18 +1,21 @@
 package bit.project.server.controller;
 
 import bit.project.server.UsecaseList;
-import bit.project.server.dao.DesignationDao;
-import bit.project.server.dao.NotificationDao;
 import bit.project.server.dao.PurchaseDao;
 import bit.project.server.entity.*;
+import bit.project.server.util.dashboard.DashboardCounters;
+import bit.project.server.util.dto.CursorPage;
 import bit.project.server.util.dto.PageQuery;
 import bit.project.server.util.dto.ResourceLink;
 import bit.project.server.util.exception.ConflictException;
 import bit.project.server.util.exception.ObjectNotFoundException;
 import bit.project.server.util.helper.CodeGenerator;
-import bit.project.server.util.helper.PageHelper;
-import bit.project.server.util.helper.PersistHelper;
+import bit.project.server.util.helper.Paginator;
+import bit.project.server.util.outbox.Outbox;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.jpasupplement.SearchSpecification;
+import bit.project.server.util.stock.StockChange;
+import bit.project.server.util.stock.StockLedger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
@@ -28,9 +31,6 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @CrossOrigin
 @RestController
@@ -41,16 +41,22 @@ public class PurchaseController {
     private PurchaseDao purchaseDao;
 
     @Autowired
-    private DesignationDao designationDao;
+    private AccessControlManager accessControlManager;
 
     @Autowired
-    private AccessControlManager accessControlManager;
+    private Paginator paginator;
 
     @Autowired
     private CodeGenerator codeGenerator;
 
     @Autowired
-    private NotificationDao notificationDao;
+    private Outbox outbox;
+
+    @Autowired
+    private StockLedger stockLedger;
+
+    @Autowired
+    private DashboardCounters dashboardCounters;
 
     private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.DESC, "tocreation");
     private final CodeGenerator.CodeGeneratorConfig codeConfig;
@@ -67,35 +73,25 @@ public class PurchaseController {
     public Page<Purchase> getAll(PageQuery pageQuery, HttpServletRequest request) {
         accessControlManager.authorize(request, "No privilege to get all purchases", UsecaseList.SHOW_ALL_PURCHASES);
 
-        if(pageQuery.isEmptySearch()){
-            return purchaseDao.findAll(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
-        }
-
-        String code = pageQuery.getSearchParam("code");
-        String date = pageQuery.getSearchParam("date");
-        Integer supplierId = pageQuery.getSearchParamAsInteger("supplier");
-
-        List<Purchase> purchases = purchaseDao.findAll(DEFAULT_SORT);
-        Stream<Purchase> stream = purchases.parallelStream();
+        PageRequest pageRequest = paginator.getPageRequest(pageQuery, DEFAULT_SORT);
 
-        List<Purchase> filteredPurchases = stream.filter(purchase -> {
-            if(code!=null)
-                if(!purchase.getCode().toLowerCase().contains(code.toLowerCase())) return false;
-            if(date!=null)
-                if(!purchase.getDate().toString().toLowerCase().contains(date.toLowerCase())) return false;
-            if(supplierId!=null)
-                if(!purchase.getSupplier().getId().equals(supplierId)) return false;
-            return true;
-        }).collect(Collectors.toList());
+        Page<Purchase> purchases = pageQuery.isEmptySearch()
+                ? purchaseDao.findAll(pageRequest)
+                : purchaseDao.findAll(getSpecification(pageQuery), pageRequest);
 
-        return PageHelper.getAsPage(filteredPurchases, pageQuery.getPage(), pageQuery.getSize());
+        return purchases.map(PurchaseController::toListEntry);
+    }
 
+    @GetMapping(params = "cursor")
+    public CursorPage<Purchase> getAllByCursor(PageQuery pageQuery, HttpServletRequest request) {
+        accessControlManager.authorize(request, "No privilege to get all purchases", UsecaseList.SHOW_ALL_PURCHASES);
+        return paginator.getCursorPage(Purchase.class, getSpecification(pageQuery), pageQuery, "Purchase.list").map(PurchaseController::toListEntry);
     }
 
     @GetMapping("/basic")
     public Page<Purchase> getAllBasic(PageQuery pageQuery, HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get all purchases' basic data", UsecaseList.SHOW_ALL_PURCHASES);
-        return purchaseDao.findAllBasic(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+        return purchaseDao.findAllBasic(paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/{id}")
@@ -112,7 +108,17 @@ public class PurchaseController {
         accessControlManager.authorize(request, "No privilege to delete purchases", UsecaseList.DELETE_PURCHASE);
 
         try{
-            if(purchaseDao.existsById(id)) purchaseDao.deleteById(id);
+            Optional<Purchase> optionalPurchase = purchaseDao.findById(id);
+            if(optionalPurchase.isEmpty()) return;
+
+            StockChange stockChange = new StockChange(StockChange.Type.PURCHASE_DELETE, optionalPurchase.get().getCode());
+            for (Purchaseitem purchaseitem : optionalPurchase.get().getPurchaseitemList()) stockChange.add(purchaseitem.getItem().getId(), -purchaseitem.getQty());
+
+            stockLedger.save(() -> {
+                purchaseDao.deleteById(id);
+                return null;
+            }, stockChange);
+            dashboardCounters.invalidate();
         }catch (DataIntegrityViolationException | RollbackException e){
             throw new ConflictException("Cannot delete. Because this purchase already used in another module");
         }
@@ -120,7 +126,7 @@ public class PurchaseController {
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ResourceLink add(@RequestBody Purchase purchase, HttpServletRequest request) throws InterruptedException {
+    public ResourceLink add(@RequestBody Purchase purchase, HttpServletRequest request) {
         User authUser = accessControlManager.authorize(request, "No privilege to add new purchase", UsecaseList.ADD_PURCHASE);
 
         purchase.setTocreation(LocalDateTime.now());
@@ -140,26 +146,17 @@ public class PurchaseController {
 
         purchase.setTotal(total);
 
-        PersistHelper.save(()->{
-            purchase.setCode(codeGenerator.getNextId(codeConfig));
-            return purchaseDao.save(purchase);
-        });
-
-        Designation manager = designationDao.findById(1).get();
-        List<Employee> employees = manager.getDesignationEmployeeList();
-        for (Employee emp: employees) {
-            List<User> uList = emp.getAccoutList();
-            if (uList.isEmpty()) continue;
-            User user =uList.get(0);
-
-            Notification notification = new Notification();
-            notification.setId(UUID.randomUUID().toString());
-            notification.setUser(user);
-            notification.setDosend(LocalDateTime.now());
-            notification.setMessage("Hello" + emp.getCallingname() + ", Add new purchase...");
-
-            notificationDao.save(notification);
-        }
+        purchase.setCode(codeGenerator.getNextId(codeConfig));
+
+        StockChange stockChange = new StockChange(StockChange.Type.PURCHASE, purchase.getCode());
+        for (Purchaseitem purchaseitem : purchase.getPurchaseitemList()) stockChange.add(purchaseitem.getItem().getId(), purchaseitem.getQty());
+
+        stockLedger.save(() -> {
+            Purchase saved = purchaseDao.save(purchase);
+            outbox.publish(Outbox.EventType.PURCHASE_ADDED, purchase.getCode(), "Add new purchase...");
+            return saved;
+        }, stockChange);
+        dashboardCounters.created(DashboardCounters.Kpi.PURCHASE, purchase.getTocreation(), null);
 
         return new ResourceLink(purchase.getId(), "/purchases/"+purchase.getId());
     }
@@ -190,8 +187,35 @@ public class PurchaseController {
 
         purchase.setTotal(total);
 
-        purchase = purchaseDao.save(purchase);
+        StockChange stockChange = new StockChange(StockChange.Type.PURCHASE_UPDATE, oldPurchase.getCode());
+        for (Purchaseitem purchaseitem : oldPurchase.getPurchaseitemList()) stockChange.add(purchaseitem.getItem().getId(), -purchaseitem.getQty());
+        for (Purchaseitem purchaseitem : purchase.getPurchaseitemList()) stockChange.add(purchaseitem.getItem().getId(), purchaseitem.getQty());
+
+        Purchase updatedPurchase = purchase;
+        purchase = stockLedger.save(() -> purchaseDao.save(updatedPurchase), stockChange);
         return new ResourceLink(purchase.getId(), "/purchases/"+purchase.getId());
     }
 
+    private SearchSpecification<Purchase> getSpecification(PageQuery pageQuery){
+        return new SearchSpecification<Purchase>(pageQuery)
+                .contains("code")
+                .date("date", "date")
+                .equal("supplier", "supplier.id");
+    }
+
+    /**
+     * The purchase with the supplier columns a list shows, without its creator and lines, so they are never
+     * loaded for one.
+     */
+    private static Purchase toListEntry(Purchase purchase){
+        Supplier supplier = null;
+        if(purchase.getSupplier() != null){
+            supplier = new Supplier(purchase.getSupplier().getId(), purchase.getSupplier().getCode(), purchase.getSupplier().getName(), null);
+            supplier.setLogo(purchase.getSupplier().getLogo());
+        }
+        Purchase entry = new Purchase(purchase.getId(), purchase.getCode(), supplier, purchase.getDate());
+        entry.setTocreation(purchase.getTocreation());
+        entry.setTotal(purchase.getTotal());
+        return entry;
+    }
 }
\ No newline at end of file
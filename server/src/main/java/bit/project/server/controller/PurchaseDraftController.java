@@ -0,0 +1,38 @@
+package bit.project.server.controller;
+
+import bit.project.server.UsecaseList;
+import bit.project.server.util.dto.PurchaseDraft;
+import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.stock.ReorderEngine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+
+@CrossOrigin
+@RestController
+@RequestMapping("/purchasedrafts")
+public class PurchaseDraftController {
+
+    @Autowired
+    private ReorderEngine reorderEngine;
+
+    @Autowired
+    private AccessControlManager accessControlManager;
+
+    @GetMapping
+    public List<PurchaseDraft> getAll(HttpServletRequest request){
+        accessControlManager.authorize(request, "No privilege to get draft purchases", UsecaseList.ADD_PURCHASE);
+        return reorderEngine.getDrafts();
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void delete(@PathVariable Integer id, HttpServletRequest request){
+        accessControlManager.authorize(request, "No privilege to delete draft purchases", UsecaseList.ADD_PURCHASE);
+        reorderEngine.deleteDraft(id);
+    }
+
+}
@@ -9,8 +9,9 @@ import bit.project.server.util.dto.ResourceLink;
 import bit.project.server.util.exception.ConflictException;
 import bit.project.server.util.exception.DataValidationException;
 import bit.project.server.util.exception.ObjectNotFoundException;
-import bit.project.server.util.helper.PageHelper;
+import bit.project.server.util.helper.Paginator;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.jpasupplement.SearchSpecification;
 import bit.project.server.util.validation.EntityValidator;
 import bit.project.server.util.validation.ValidationErrorBag;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,10 +25,7 @@ import org.springframework.web.bind.annotation.*;
 import javax.persistence.RollbackException;
 import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @CrossOrigin
 @RestController
@@ -38,35 +36,26 @@ public class RoleController {
 
     @Autowired private RoleDao roleDao;
     @Autowired private AccessControlManager accessControlManager;
+    @Autowired private Paginator paginator;
 
     @GetMapping
     public Page<Role> getAll(PageQuery pageQuery, HttpServletRequest request) {
 
         accessControlManager.authorize(request, "No privilege to get all roles", UsecaseList.SHOW_ALL_ROLES);
 
-        if(pageQuery.isEmptySearch()){
-            return roleDao.findAll(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
-        }else{
-
-            String name = pageQuery.getSearchParam("name");
-
-            List<Role> roles = roleDao.findAll(DEFAULT_SORT);
-            Stream<Role> stream = roles.parallelStream();
-
-            List<Role> filteredUsers = stream.filter(role -> {
-                if(name!=null)
-                    if(!role.getName().toLowerCase().contains(name.toLowerCase())) return false;
-                return true;
-            }).collect(Collectors.toList());
+        PageRequest pageRequest = paginator.getPageRequest(pageQuery, DEFAULT_SORT);
 
-            return PageHelper.getAsPage(filteredUsers, pageQuery.getPage(), pageQuery.getSize());
+        if(pageQuery.isEmptySearch()){
+            return roleDao.findAll(pageRequest);
         }
+
+        return roleDao.findAll(getSpecification(pageQuery), pageRequest);
     }
 
     @GetMapping("/basic")
     public Page<Role> getAllBasic(PageQuery pageQuery, HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get all roles' basic data", UsecaseList.SHOW_ALL_ROLES, UsecaseList.ADD_USER, UsecaseList.UPDATE_USER);
-        return roleDao.findAllBasic(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+        return roleDao.findAllBasic(paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/{id}")
@@ -93,6 +82,7 @@ public class RoleController {
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
         roleDao.save(role);
+        accessControlManager.invalidateRolePermissions();
         return new ResourceLink(role.getId(), "/roles/"+role.getId());
     }
 
@@ -115,6 +105,7 @@ public class RoleController {
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
         roleDao.save(role);
+        accessControlManager.invalidateRolePermissions();
         return new ResourceLink(role.getId(), "/roles/"+role.getId());
     }
 
@@ -124,9 +115,17 @@ public class RoleController {
         accessControlManager.authorize(request, "No privilege to delete roles",  UsecaseList.DELETE_ROLE);
 
         try{
-            if(roleDao.existsById(id)) roleDao.deleteById(id);
+            if(roleDao.existsById(id)){
+                roleDao.deleteById(id);
+                accessControlManager.invalidateRolePermissions();
+            }
         }catch (DataIntegrityViolationException | RollbackException e){
             throw new ConflictException("Cannot delete. Because this role already used in another module");
         }
     }
+
+    private SearchSpecification<Role> getSpecification(PageQuery pageQuery){
+        return new SearchSpecification<Role>(pageQuery)
+                .contains("name");
+    }
 }
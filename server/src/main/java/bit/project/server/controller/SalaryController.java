@@ -3,6 +3,7 @@ package bit.project.server.controller;
 import bit.project.server.UsecaseList;
 import bit.project.server.dao.*;
 import bit.project.server.entity.*;
+import bit.project.server.util.dto.CursorPage;
 import bit.project.server.util.dto.PageQuery;
 import bit.project.server.util.dto.ResourceLink;
 import bit.project.server.util.exception.ConflictException;
@@ -10,9 +11,9 @@ import bit.project.server.util.exception.DataValidationException;
 import bit.project.server.util.exception.ObjectNotFoundException;
 import bit.project.server.util.helper.CodeGenerator;
 import bit.project.server.util.helper.FileHelper;
-import bit.project.server.util.helper.PageHelper;
-import bit.project.server.util.helper.PersistHelper;
+import bit.project.server.util.helper.Paginator;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.jpasupplement.SearchSpecification;
 import bit.project.server.util.validation.EntityValidator;
 import bit.project.server.util.validation.ValidationErrorBag;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,11 +29,8 @@ import javax.servlet.http.HttpServletRequest;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @CrossOrigin
 @RestController
@@ -54,6 +52,9 @@ public class SalaryController {
     @Autowired
     private AccessControlManager accessControlManager;
 
+    @Autowired
+    private Paginator paginator;
+
     @Autowired
     private CodeGenerator codeGenerator;
 
@@ -75,35 +76,25 @@ public class SalaryController {
     public Page<Salary> getAll(PageQuery pageQuery, HttpServletRequest request) {
         accessControlManager.authorize(request, "No privilege to get all salaries", UsecaseList.SHOW_ALL_SALARIES);
 
+        PageRequest pageRequest = paginator.getPageRequest(pageQuery, DEFAULT_SORT);
+
         if(pageQuery.isEmptySearch()){
-            return salaryDao.findAll(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+            return salaryDao.findAll(pageRequest);
         }
 
-        String code = pageQuery.getSearchParam("code");
-        String date = pageQuery.getSearchParam("date");
-        Integer employeeId = pageQuery.getSearchParamAsInteger("employee");
-
-        List<Salary> salaries = salaryDao.findAll(DEFAULT_SORT);
-        Stream<Salary> stream = salaries.parallelStream();
-
-        List<Salary> filteredSalaries = stream.filter(salary -> {
-            if(code!=null)
-                if(!salary.getCode().toLowerCase().contains(code.toLowerCase())) return false;
-            if(date!=null)
-                if(!salary.getDate().toString().toLowerCase().contains(date.toLowerCase())) return false;
-            if(employeeId!=null)
-                if(!salary.getEmployee().getId().equals(employeeId)) return false;
-            return true;
-        }).collect(Collectors.toList());
-
-        return PageHelper.getAsPage(filteredSalaries, pageQuery.getPage(), pageQuery.getSize());
+        return salaryDao.findAll(getSpecification(pageQuery), pageRequest);
+    }
 
+    @GetMapping(params = "cursor")
+    public CursorPage<Salary> getAllByCursor(PageQuery pageQuery, HttpServletRequest request) {
+        accessControlManager.authorize(request, "No privilege to get all salaries", UsecaseList.SHOW_ALL_SALARIES);
+        return paginator.getCursorPage(Salary.class, getSpecification(pageQuery), pageQuery, "Salary.list");
     }
 
     @GetMapping("/basic")
     public Page<Salary> getAllBasic(PageQuery pageQuery, HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get all salaries' basic data", UsecaseList.SHOW_ALL_SALARIES);
-        return salaryDao.findAllBasic(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+        return salaryDao.findAllBasic(paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/{id}")
@@ -128,7 +119,7 @@ public class SalaryController {
     
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ResourceLink add(@RequestBody Salary salary, HttpServletRequest request) throws InterruptedException {
+    public ResourceLink add(@RequestBody Salary salary, HttpServletRequest request) {
         User authUser = accessControlManager.authorize(request, "No privilege to add new salary", UsecaseList.ADD_SALARY);
 
         salary.setTocreation(LocalDateTime.now());
@@ -141,10 +132,8 @@ public class SalaryController {
 
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
-        PersistHelper.save(()->{
-            salary.setCode(codeGenerator.getNextId(codeConfig));
-            return salaryDao.save(salary);
-        });
+        salary.setCode(codeGenerator.getNextId(codeConfig));
+        salaryDao.save(salary);
 
         return new ResourceLink(salary.getId(), "/salaries/"+salary.getId());
     }
@@ -165,4 +154,11 @@ public class SalaryController {
         salary = salaryDao.save(salary);
         return new ResourceLink(salary.getId(), "/salaries/"+salary.getId());
     }
+
+    private SearchSpecification<Salary> getSpecification(PageQuery pageQuery){
+        return new SearchSpecification<Salary>(pageQuery)
+                .contains("code")
+                .date("date", "date")
+                .equal("employee", "employee.id");
+    }
 }
\ No newline at end of file
@@ -1,18 +1,31 @@
 package bit.project.server.controller;
 
 import bit.project.server.UsecaseList;
-import bit.project.server.dao.DesignationDao;
-import bit.project.server.dao.NotificationDao;
+import bit.project.server.dao.ItemDao;
 import bit.project.server.dao.SaleDao;
 import bit.project.server.entity.*;
+import bit.project.server.util.analytics.SalesCube;
+import bit.project.server.util.dashboard.DashboardCounters;
+import bit.project.server.util.dto.BatchResult;
+import bit.project.server.util.dto.CursorPage;
 import bit.project.server.util.dto.PageQuery;
+import bit.project.server.util.dto.PricedBasket;
 import bit.project.server.util.dto.ResourceLink;
+import bit.project.server.util.exception.BadRequestException;
 import bit.project.server.util.exception.ConflictException;
+import bit.project.server.util.exception.DataValidationException;
 import bit.project.server.util.exception.ObjectNotFoundException;
 import bit.project.server.util.helper.CodeGenerator;
-import bit.project.server.util.helper.PageHelper;
-import bit.project.server.util.helper.PersistHelper;
+import bit.project.server.util.helper.Paginator;
+import bit.project.server.util.outbox.Outbox;
+import bit.project.server.util.pricing.PricingEngine;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.jpasupplement.SearchSpecification;
+import bit.project.server.util.stock.StockChange;
+import bit.project.server.util.stock.StockLedger;
+import bit.project.server.util.stock.StockReservation;
+import bit.project.server.util.validation.EntityValidator;
+import bit.project.server.util.validation.ValidationErrorBag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
@@ -24,12 +37,9 @@ import org.springframework.web.bind.annotation.*;
 import javax.persistence.RollbackException;
 import javax.servlet.http.HttpServletRequest;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.*;
 
 @CrossOrigin
 @RestController
@@ -40,17 +50,33 @@ public class SaleController {
     private SaleDao saleDao;
 
     @Autowired
-    private DesignationDao designationDao;
+    private AccessControlManager accessControlManager;
 
     @Autowired
-    private AccessControlManager accessControlManager;
+    private Paginator paginator;
 
     @Autowired
     private CodeGenerator codeGenerator;
 
     @Autowired
-    private NotificationDao notificationDao;
+    private Outbox outbox;
+
+    @Autowired
+    private StockLedger stockLedger;
 
+    @Autowired
+    private ItemDao itemDao;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+
+    @Autowired
+    private DashboardCounters dashboardCounters;
+
+    @Autowired
+    private SalesCube salesCube;
+
+    private static final int MAX_BATCH_SIZE = 1000;
     private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.DESC, "tocreation");
     private final CodeGenerator.CodeGeneratorConfig codeConfig;
 
@@ -66,32 +92,25 @@ public class SaleController {
     public Page<Sale> getAll(PageQuery pageQuery, HttpServletRequest request) {
         accessControlManager.authorize(request, "No privilege to get all sales", UsecaseList.SHOW_ALL_SALES);
 
-        if(pageQuery.isEmptySearch()){
-            return saleDao.findAll(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
-        }
-
-        String code = pageQuery.getSearchParam("code");
-        String date = pageQuery.getSearchParam("date");
-
-        List<Sale> sales = saleDao.findAll(DEFAULT_SORT);
-        Stream<Sale> stream = sales.parallelStream();
+        PageRequest pageRequest = paginator.getPageRequest(pageQuery, DEFAULT_SORT);
 
-        List<Sale> filteredSales = stream.filter(sale -> {
-            if(code!=null)
-                if(!sale.getCode().toLowerCase().contains(code.toLowerCase())) return false;
-            if(date!=null)
-                if(!sale.getDate().toString().toLowerCase().contains(date.toLowerCase())) return false;
-            return true;
-        }).collect(Collectors.toList());
+        Page<Sale> sales = pageQuery.isEmptySearch()
+                ? saleDao.findAll(pageRequest)
+                : saleDao.findAll(getSpecification(pageQuery), pageRequest);
 
-        return PageHelper.getAsPage(filteredSales, pageQuery.getPage(), pageQuery.getSize());
+        return sales.map(SaleController::toListEntry);
+    }
 
+    @GetMapping(params = "cursor")
+    public CursorPage<Sale> getAllByCursor(PageQuery pageQuery, HttpServletRequest request) {
+        accessControlManager.authorize(request, "No privilege to get all sales", UsecaseList.SHOW_ALL_SALES);
+        return paginator.getCursorPage(Sale.class, getSpecification(pageQuery), pageQuery).map(SaleController::toListEntry);
     }
 
     @GetMapping("/basic")
     public Page<Sale> getAllBasic(PageQuery pageQuery, HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get all sales' basic data", UsecaseList.SHOW_ALL_SALES);
-        return saleDao.findAllBasic(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+        return saleDao.findAllBasic(paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/{id}")
@@ -108,7 +127,17 @@ public class SaleController {
         accessControlManager.authorize(request, "No privilege to delete sales", UsecaseList.DELETE_SALE);
 
         try{
-            if(saleDao.existsById(id)) saleDao.deleteById(id);
+            Optional<Sale> optionalSale = saleDao.findById(id);
+            if(optionalSale.isEmpty()) return;
+
+            StockChange stockChange = new StockChange(StockChange.Type.SALE_DELETE, optionalSale.get().getCode()).setDate(optionalSale.get().getDate());
+            for (Saleitem saleitem : optionalSale.get().getSaleitemList()) stockChange.add(saleitem.getItem().getId(), saleitem.getQty());
+
+            salesCube.replace(optionalSale.get(), () -> stockLedger.save(() -> {
+                saleDao.deleteById(id);
+                return null;
+            }, stockChange));
+            dashboardCounters.invalidate();
         }catch (DataIntegrityViolationException | RollbackException e){
             throw new ConflictException("Cannot delete. Because this sale already used in another module");
         }
@@ -116,50 +145,141 @@ public class SaleController {
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ResourceLink add(@RequestBody Sale sale, HttpServletRequest request) throws InterruptedException {
+    public ResourceLink add(@RequestBody Sale sale, HttpServletRequest request) {
         User authUser = accessControlManager.authorize(request, "No privilege to add new sale", UsecaseList.ADD_SALE);
 
         sale.setTocreation(LocalDateTime.now());
         sale.setCreator(authUser);
         sale.setId(null);
 
-        BigDecimal total = new BigDecimal(0);
+        price(sale);
 
-        for (Saleitem saleitem : sale.getSaleitemList()) {
-            saleitem.setSale(sale);
+        sale.setCode(codeGenerator.getNextId(codeConfig));
 
-            BigDecimal qty = new BigDecimal(saleitem.getQty());
-            BigDecimal unitprice = saleitem.getUnitprice();
-            BigDecimal lineTotal = unitprice.multiply(qty);
-            total = total.add(lineTotal);
-        }
+        StockChange stockChange = new StockChange(StockChange.Type.SALE, sale.getCode()).setDate(sale.getDate());
+        for (Saleitem saleitem : sale.getSaleitemList()) stockChange.add(saleitem.getItem().getId(), -saleitem.getQty());
+
+        stockLedger.save(() -> {
+            Sale saved = saleDao.save(sale);
+            outbox.publish(Outbox.EventType.SALE_ADDED, sale.getCode(), "Add new sale...");
+            return saved;
+        }, stockChange);
+        dashboardCounters.created(DashboardCounters.Kpi.SALE, sale.getTocreation(), sale.getTotal());
+        salesCube.added(sale);
+
+        return new ResourceLink(sale.getId(), "/sales/"+sale.getId());
+    }
+
+    /**
+     * Prices a basket with the current item prices and promotions without saving it.
+     */
+    @PostMapping("/price")
+    public PricedBasket price(@RequestBody List<Saleitem> saleitems, HttpServletRequest request) {
+        accessControlManager.authorize(request, "No privilege to add new sale", UsecaseList.ADD_SALE);
+        return pricingEngine.price(saleitems);
+    }
 
-        sale.setTotal(total);
+    /**
+     * Adds a batch of sales, e.g. the backlog of an offline POS terminal, and reports a result per sale.
+     * Invalid sales and sales short of stock are rejected individually; the rest are written with batched inserts
+     * in a single transaction.
+     */
+    @PostMapping("/batch")
+    public List<BatchResult> addAll(@RequestBody List<Sale> sales, HttpServletRequest request) {
+        User authUser = accessControlManager.authorize(request, "No privilege to add new sale", UsecaseList.ADD_SALE);
 
-        PersistHelper.save(()->{
-            sale.setCode(codeGenerator.getNextId(codeConfig));
-            return saleDao.save(sale);
-        });
+        if(sales.size() > MAX_BATCH_SIZE) throw new BadRequestException("A batch can contain at most " + MAX_BATCH_SIZE + " sales");
 
-        Designation manager = designationDao.findById(1).get();
-        List<Employee> employees = manager.getDesignationEmployeeList();
-        for (Employee emp: employees) {
-            List<User> uList = emp.getAccoutList();
-            if (uList.isEmpty()) continue;
-            User user =uList.get(0);
+        Set<Integer> itemIds = new HashSet<>();
+        for (Sale sale : sales) {
+            if(sale.getSaleitemList() == null) continue;
+            for (Saleitem saleitem : sale.getSaleitemList()) {
+                if(saleitem.getItem() != null && saleitem.getItem().getId() != null) itemIds.add(saleitem.getItem().getId());
+            }
+        }
+        Map<Integer, Item> items = new HashMap<>();
+        if(!itemIds.isEmpty()) for (Item item : itemDao.findAllBasicByIdIn(itemIds)) items.put(item.getId(), item);
+
+        List<BatchResult> results = new ArrayList<>();
+        List<Sale> validSales = new ArrayList<>();
+        List<BatchResult> validResults = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int i = 0; i < sales.size(); i++) {
+            Sale sale = sales.get(i);
+            BatchResult result = new BatchResult(i);
+            results.add(result);
+
+            sale.setId(null);
+            sale.setTocreation(now);
+            sale.setCreator(authUser);
+
+            ValidationErrorBag errorBag = getBatchErrors(sale, items.keySet());
+            if(errorBag.count() > 0){
+                result.setStatus(HttpStatus.BAD_REQUEST.value());
+                result.setErrors(errorBag);
+                continue;
+            }
+
+            try{
+                price(sale, items);
+            }catch (BadRequestException e){
+                result.setStatus(HttpStatus.BAD_REQUEST.value());
+                result.setErrors(e.getReason());
+                continue;
+            }
+            validSales.add(sale);
+            validResults.add(result);
+        }
 
-            Notification notification = new Notification();
-            notification.setId(UUID.randomUUID().toString());
-            notification.setUser(user);
-            notification.setDosend(LocalDateTime.now());
-            notification.setMessage("Hello" + emp.getCallingname() + ", Add new sale...");
+        List<String> codes = codeGenerator.getNextIds(codeConfig, validSales.size());
+        List<Sale> acceptedSales = new ArrayList<>();
+        List<BatchResult> acceptedResults = new ArrayList<>();
+        List<StockReservation> reservations = new ArrayList<>();
+
+        for (int i = 0; i < validSales.size(); i++) {
+            Sale sale = validSales.get(i);
+            sale.setCode(codes.get(i));
+
+            StockChange stockChange = new StockChange(StockChange.Type.SALE, sale.getCode()).setDate(sale.getDate());
+            for (Saleitem saleitem : sale.getSaleitemList()) stockChange.add(saleitem.getItem().getId(), -saleitem.getQty());
+
+            try{
+                reservations.add(stockLedger.reserve(stockChange));
+            }catch (ConflictException e){
+                validResults.get(i).setStatus(HttpStatus.CONFLICT.value());
+                validResults.get(i).setErrors(e.getReason());
+                continue;
+            }
+            acceptedSales.add(sale);
+            acceptedResults.add(validResults.get(i));
+        }
 
-            notificationDao.save(notification);
+        if(acceptedSales.isEmpty()) return results;
+
+        stockLedger.save(() -> {
+            saleDao.insertAll(acceptedSales);
+            outbox.publish(Outbox.EventType.SALE_ADDED, null, "Add " + acceptedSales.size() + " new sales...");
+            return null;
+        }, reservations);
+
+        for (int i = 0; i < acceptedSales.size(); i++) {
+            Sale sale = acceptedSales.get(i);
+            BatchResult result = acceptedResults.get(i);
+            dashboardCounters.created(DashboardCounters.Kpi.SALE, sale.getTocreation(), sale.getTotal());
+            salesCube.added(sale);
+            result.setStatus(HttpStatus.CREATED.value());
+            result.setId(sale.getId());
+            result.setLink("/sales/"+sale.getId());
         }
 
-        return new ResourceLink(sale.getId(), "/sales/"+sale.getId());
+        return results;
     }
 
+    /**
+     * Updates a sale without repricing what was already sold: items that stay on the sale keep their unit price,
+     * added items take the current price, and promotions are those of the day of the sale.
+     */
     @PutMapping("/{id}")
     public ResourceLink update(@PathVariable Integer id, @RequestBody Sale sale, HttpServletRequest request) {
         accessControlManager.authorize(request, "No privilege to update sale details", UsecaseList.UPDATE_SALE);
@@ -167,27 +287,79 @@ public class SaleController {
         Optional<Sale> optionalSale = saleDao.findById(id);
         if(optionalSale.isEmpty()) throw new ObjectNotFoundException("Sale not found");
         Sale oldSale = optionalSale.get();
+        BigDecimal oldTotal = oldSale.getTotal();
 
         sale.setId(id);
         sale.setCode(oldSale.getCode());
         sale.setCreator(oldSale.getCreator());
         sale.setTocreation(oldSale.getTocreation());
 
-        BigDecimal total = new BigDecimal(0);
+        reprice(sale, oldSale);
 
-        for (Saleitem saleitem : sale.getSaleitemList()) {
-            saleitem.setSale(sale);
+        StockChange stockChange = new StockChange(StockChange.Type.SALE_UPDATE, oldSale.getCode()).setDate(sale.getDate());
+        for (Saleitem saleitem : oldSale.getSaleitemList()) stockChange.add(saleitem.getItem().getId(), saleitem.getQty());
+        for (Saleitem saleitem : sale.getSaleitemList()) stockChange.add(saleitem.getItem().getId(), -saleitem.getQty());
+
+        Sale updatedSale = sale;
+        sale = salesCube.replace(oldSale, () -> stockLedger.save(() -> saleDao.save(updatedSale), stockChange));
+        dashboardCounters.changed(DashboardCounters.Kpi.SALE, oldSale.getTocreation(), 0, sale.getTotal().subtract(oldTotal));
+        return new ResourceLink(sale.getId(), "/sales/"+sale.getId());
+    }
+
+    private void price(Sale sale){
+        PricedBasket basket = pricingEngine.price(sale.getSaleitemList());
+        for (Saleitem saleitem : sale.getSaleitemList()) saleitem.setSale(sale);
+        sale.setTotal(basket.getTotal());
+    }
+
+    private void reprice(Sale sale, Sale oldSale){
+        LocalDate day = oldSale.getDate() != null ? oldSale.getDate() : oldSale.getTocreation().toLocalDate();
+        PricedBasket basket = pricingEngine.reprice(sale.getSaleitemList(), oldSale.getSaleitemList(), day);
+        for (Saleitem saleitem : sale.getSaleitemList()) saleitem.setSale(sale);
+        sale.setTotal(basket.getTotal());
+    }
+
+    private void price(Sale sale, Map<Integer, Item> items){
+        PricedBasket basket = pricingEngine.price(sale.getSaleitemList(), items);
+        for (Saleitem saleitem : sale.getSaleitemList()) saleitem.setSale(sale);
+        sale.setTotal(basket.getTotal());
+    }
+
+    private ValidationErrorBag getBatchErrors(Sale sale, Set<Integer> existingItemIds){
+        ValidationErrorBag errorBag = new ValidationErrorBag();
 
-            BigDecimal qty = new BigDecimal(saleitem.getQty());
-            BigDecimal unitprice = saleitem.getUnitprice();
-            BigDecimal lineTotal = unitprice.multiply(qty);
-            total = total.add(lineTotal);
+        try{
+            EntityValidator.validate(sale);
+        }catch (DataValidationException e){
+            errorBag.add("sale", e.getReason());
         }
 
-        sale.setTotal(total);
+        if(sale.getSaleitemList() == null || sale.getSaleitemList().isEmpty()){
+            errorBag.add("saleitemList", "At least one item is required");
+            return errorBag;
+        }
 
-        sale = saleDao.save(sale);
-        return new ResourceLink(sale.getId(), "/sales/"+sale.getId());
+        for (Saleitem saleitem : sale.getSaleitemList()) {
+            if(saleitem.getItem() == null || !existingItemIds.contains(saleitem.getItem().getId())) errorBag.add("item", "Invalid item");
+            if(saleitem.getQty() == null || saleitem.getQty() <= 0) errorBag.add("qty", "Quantity should be a positive number");
+        }
+
+        return errorBag;
     }
 
+    private SearchSpecification<Sale> getSpecification(PageQuery pageQuery){
+        return new SearchSpecification<Sale>(pageQuery)
+                .contains("code")
+                .date("date", "date");
+    }
+
+    /**
+     * The sale without its creator and lines, which a list does not show, so they are never loaded for one.
+     */
+    private static Sale toListEntry(Sale sale){
+        Sale entry = new Sale(sale.getId(), sale.getCode(), sale.getDate());
+        entry.setTocreation(sale.getTocreation());
+        entry.setTotal(sale.getTotal());
+        return entry;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package bit.project.server.controller;
+
+import bit.project.server.UsecaseList;
+import bit.project.server.util.analytics.SalesCube;
+import bit.project.server.util.dto.SalesPoint;
+import bit.project.server.util.dto.SalesQuery;
+import bit.project.server.util.dto.SalesTotal;
+import bit.project.server.util.security.AccessControlManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+
+/**
+ * Sales reports served from the {@link SalesCube}. Every report takes the optional filters of {@link SalesQuery};
+ * the period defaults to the whole retention period of the cube.
+ */
+@CrossOrigin
+@RestController
+@RequestMapping("/analytics/sales")
+public class SalesAnalyticsController {
+
+    @Autowired
+    private SalesCube salesCube;
+
+    @Autowired
+    private AccessControlManager accessControlManager;
+
+    @GetMapping("/top")
+    public List<SalesTotal> getTop(@RequestParam(defaultValue = "ITEM") SalesCube.Dimension by,
+                                   @RequestParam(defaultValue = "REVENUE") SalesCube.Measure measure,
+                                   @RequestParam(defaultValue = "10") int n,
+                                   SalesQuery query, HttpServletRequest request){
+        accessControlManager.authorize(request, "No privilege to get sales analytics", UsecaseList.SHOW_SALE_ANALYTICS);
+        return salesCube.getTop(by, measure, n, query);
+    }
+
+    @GetMapping("/breakdown")
+    public List<SalesTotal> getBreakdown(@RequestParam(defaultValue = "CATEGORY") SalesCube.Dimension by,
+                                         SalesQuery query, HttpServletRequest request){
+        accessControlManager.authorize(request, "No privilege to get sales analytics", UsecaseList.SHOW_SALE_ANALYTICS);
+        return salesCube.getBreakdown(by, query);
+    }
+
+    @GetMapping("/series")
+    public List<SalesPoint> getSeries(SalesQuery query, HttpServletRequest request){
+        accessControlManager.authorize(request, "No privilege to get sales analytics", UsecaseList.SHOW_SALE_ANALYTICS);
+        return salesCube.getSeries(query);
+    }
+
+}
@@ -0,0 +1,61 @@
+package bit.project.server.controller;
+
+import bit.project.server.UsecaseList;
+import bit.project.server.util.dto.SearchHit;
+import bit.project.server.util.exception.NoPrivilegeException;
+import bit.project.server.util.search.SearchIndex;
+import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.security.UserPrincipal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+@CrossOrigin
+@RestController
+@RequestMapping("/search")
+public class SearchController {
+
+    private static final int MAX_LIMIT = 100;
+
+    @Autowired private SearchIndex searchIndex;
+    @Autowired private AccessControlManager accessControlManager;
+
+    @GetMapping
+    public List<SearchHit> search(@RequestParam("q") String text,
+                                  @RequestParam(value = "types", required = false) String types,
+                                  @RequestParam(value = "limit", defaultValue = "20") Integer limit,
+                                  HttpServletRequest request){
+        UserPrincipal principal = accessControlManager.getPrincipal(request);
+
+        Set<SearchIndex.Type> requestedTypes = EnumSet.allOf(SearchIndex.Type.class);
+        if(types != null && !types.isBlank()){
+            requestedTypes.clear();
+            for (String type : types.split(",")) {
+                SearchIndex.Type t = SearchIndex.Type.of(type);
+                if(t != null) requestedTypes.add(t);
+            }
+        }
+
+        Set<SearchIndex.Type> allowedTypes = EnumSet.noneOf(SearchIndex.Type.class);
+        for (SearchIndex.Type type : requestedTypes) {
+            if(principal.hasPrivilege(getUsecase(type))) allowedTypes.add(type);
+        }
+
+        if(allowedTypes.isEmpty()) throw new NoPrivilegeException("No privilege to search");
+
+        return searchIndex.search(text, allowedTypes, Math.max(1, Math.min(limit, MAX_LIMIT)));
+    }
+
+    private UsecaseList getUsecase(SearchIndex.Type type){
+        switch (type){
+            case ITEM: return UsecaseList.SHOW_ALL_ITEMS;
+            case SUPPLIER: return UsecaseList.SHOW_ALL_SUPPLIERS;
+            case CUSTOMER: return UsecaseList.SHOW_ALL_CUSTOMERS;
+            default: return UsecaseList.SHOW_ALL_EMPLOYEES;
+        }
+    }
+}
@@ -6,16 +6,19 @@ import bit.project.server.entity.File;
 import bit.project.server.entity.Supplierstatus;
 import bit.project.server.entity.Supplier;
 import bit.project.server.entity.User;
+import bit.project.server.util.dto.CursorPage;
 import bit.project.server.util.dto.PageQuery;
 import bit.project.server.util.dto.ResourceLink;
 import bit.project.server.util.exception.ConflictException;
 import bit.project.server.util.exception.DataValidationException;
 import bit.project.server.util.exception.ObjectNotFoundException;
 import bit.project.server.util.helper.CodeGenerator;
+import bit.project.server.util.blob.FileStorage;
 import bit.project.server.util.helper.FileHelper;
-import bit.project.server.util.helper.PageHelper;
-import bit.project.server.util.helper.PersistHelper;
+import bit.project.server.util.helper.Paginator;
+import bit.project.server.util.search.SearchIndex;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.jpasupplement.SearchSpecification;
 import bit.project.server.util.validation.EntityValidator;
 import bit.project.server.util.validation.ValidationErrorBag;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,12 +30,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import javax.persistence.RollbackException;
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @CrossOrigin
 @RestController
@@ -45,10 +46,17 @@ public class SupplierController {
     @Autowired
     private AccessControlManager accessControlManager;
 
+    @Autowired
+    private Paginator paginator;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
     @Autowired
     private CodeGenerator codeGenerator;
 
     @Autowired private FileDao fileDao;
+    @Autowired private FileStorage fileStorage;
 
     private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.DESC, "tocreation");
     private final CodeGenerator.CodeGeneratorConfig codeConfig;
@@ -65,38 +73,25 @@ public class SupplierController {
     public Page<Supplier> getAll(PageQuery pageQuery, HttpServletRequest request) {
         accessControlManager.authorize(request, "No privilege to get all suppliers", UsecaseList.SHOW_ALL_SUPPLIERS);
 
+        PageRequest pageRequest = paginator.getPageRequest(pageQuery, DEFAULT_SORT);
+
         if(pageQuery.isEmptySearch()){
-            return supplierDao.findAll(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+            return supplierDao.findAll(pageRequest);
         }
 
-        String code = pageQuery.getSearchParam("code");
-        String name = pageQuery.getSearchParam("name");
-        Integer suppliertypeId = pageQuery.getSearchParamAsInteger("suppliertype");
-        Integer supplierstatusId = pageQuery.getSearchParamAsInteger("supplierstatus");
-
-        List<Supplier> suppliers = supplierDao.findAll(DEFAULT_SORT);
-        Stream<Supplier> stream = suppliers.parallelStream();
-
-        List<Supplier> filteredSuppliers = stream.filter(supplier -> {
-            if(code!=null)
-                if(!supplier.getCode().toLowerCase().contains(code.toLowerCase())) return false;
-            if(name!=null)
-                if(!supplier.getName().toLowerCase().contains(name.toLowerCase())) return false;
-            if(suppliertypeId!=null)
-                if(!supplier.getSuppliertype().getId().equals(suppliertypeId)) return false;
-            if(supplierstatusId!=null)
-                if(!supplier.getSupplierstatus().getId().equals(supplierstatusId)) return false;
-            return true;
-        }).collect(Collectors.toList());
-
-        return PageHelper.getAsPage(filteredSuppliers, pageQuery.getPage(), pageQuery.getSize());
+        return supplierDao.findAll(getSpecification(pageQuery), pageRequest);
+    }
 
+    @GetMapping(params = "cursor")
+    public CursorPage<Supplier> getAllByCursor(PageQuery pageQuery, HttpServletRequest request) {
+        accessControlManager.authorize(request, "No privilege to get all suppliers", UsecaseList.SHOW_ALL_SUPPLIERS);
+        return paginator.getCursorPage(Supplier.class, getSpecification(pageQuery), pageQuery, "Supplier.list");
     }
 
     @GetMapping("/basic")
     public Page<Supplier> getAllBasic(PageQuery pageQuery, HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get all suppliers' basic data", UsecaseList.SHOW_ALL_SUPPLIERS);
-        return supplierDao.findAllBasic(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
+        return supplierDao.findAllBasic(paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/{id}")
@@ -113,7 +108,10 @@ public class SupplierController {
         accessControlManager.authorize(request, "No privilege to delete suppliers", UsecaseList.DELETE_SUPPLIER);
 
         try{
-            if(supplierDao.existsById(id)) supplierDao.deleteById(id);
+            if(supplierDao.existsById(id)){
+                supplierDao.deleteById(id);
+                searchIndex.delete(SearchIndex.Type.SUPPLIER, id);
+            }
         }catch (DataIntegrityViolationException | RollbackException e){
             throw new ConflictException("Cannot delete. Because this supplier already used in another module");
         }
@@ -121,7 +119,7 @@ public class SupplierController {
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ResourceLink add(@RequestBody Supplier supplier, HttpServletRequest request) throws InterruptedException {
+    public ResourceLink add(@RequestBody Supplier supplier, HttpServletRequest request) {
         User authUser = accessControlManager.authorize(request, "No privilege to add new supplier", UsecaseList.ADD_SUPPLIER);
 
         supplier.setTocreation(LocalDateTime.now());
@@ -145,10 +143,9 @@ public class SupplierController {
 
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
-        PersistHelper.save(()->{
-            supplier.setCode(codeGenerator.getNextId(codeConfig));
-            return supplierDao.save(supplier);
-        });
+        supplier.setCode(codeGenerator.getNextId(codeConfig));
+        supplierDao.save(supplier);
+        searchIndex.index(supplier);
 
         return new ResourceLink(supplier.getId(), "/suppliers/"+supplier.getId());
     }
@@ -188,11 +185,12 @@ public class SupplierController {
         if(errorBag.count()>0) throw new DataValidationException(errorBag);
 
         supplier = supplierDao.save(supplier);
+        searchIndex.index(supplier);
         return new ResourceLink(supplier.getId(), "/suppliers/"+supplier.getId());
     }
 
     @GetMapping("/{id}/logo")
-    public HashMap<String, String> getLogo(@PathVariable Integer id, HttpServletRequest request){
+    public HashMap<String, String> getLogo(@PathVariable Integer id, HttpServletRequest request) throws IOException {
         accessControlManager.authorize(request, "No privilege to get supplier logo", UsecaseList.SHOW_SUPPLIER_DETAILS);
 
         Supplier supplier = getSupplier(id);
@@ -206,7 +204,7 @@ public class SupplierController {
         File logo = optionalFile.get();
         HashMap<String, String> data = new HashMap<>();
 
-        data.put("file", FileHelper.byteArrayToBase64(logo.getFile(), logo.getFilemimetype()));
+        data.put("file", FileHelper.byteArrayToBase64(fileStorage.getBytes(logo), logo.getFilemimetype()));
 
         return data;
     }
@@ -215,4 +213,12 @@ public class SupplierController {
         if(supplierOptional.isEmpty()) throw new ObjectNotFoundException("Supplier not found");
         return supplierOptional.get();
     }
+
+    private SearchSpecification<Supplier> getSpecification(PageQuery pageQuery){
+        return new SearchSpecification<Supplier>(pageQuery)
+                .contains("code")
+                .contains("name")
+                .equal("suppliertype", "suppliertype.id")
+                .equal("supplierstatus", "supplierstatus.id");
+    }
 }
\ No newline at end of file
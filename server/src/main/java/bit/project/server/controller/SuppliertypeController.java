@@ -1,10 +1,13 @@
 package bit.project.server.controller;
 
-import java.util.List;
 import bit.project.server.entity.Suppliertype;
-import bit.project.server.dao.SuppliertypeDao;
-import org.springframework.web.bind.annotation.*;
+import bit.project.server.util.reference.ReferenceData;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 @CrossOrigin
 @RestController
@@ -12,10 +15,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 public class SuppliertypeController{
 
     @Autowired
-    private SuppliertypeDao suppliertypeDao;
+    private ReferenceData referenceData;
 
     @GetMapping
-    public List<Suppliertype> getAll(){
-        return suppliertypeDao.findAll();
+    public void getAll(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        referenceData.serve(Suppliertype.class, request, response);
     }
 }
\ No newline at end of file
@@ -12,6 +12,7 @@ import bit.project.server.util.exception.ConflictException;
 import bit.project.server.util.exception.DataValidationException;
 import bit.project.server.util.exception.ObjectNotFoundException;
 import bit.project.server.util.helper.PageHelper;
+import bit.project.server.util.reference.ReferenceData;
 import bit.project.server.util.security.AccessControlManager;
 import bit.project.server.util.validation.EntityValidator;
 import bit.project.server.util.validation.ValidationErrorBag;
@@ -25,6 +26,8 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.persistence.RollbackException;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -36,14 +39,12 @@ import java.util.stream.Stream;
 @RequestMapping("/systemmodules")
 public class SystemmoduleController {
 
-    private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.ASC, "id");
-
-    @Autowired private SystemmoduleDao systemmoduleDao;
+    @Autowired private ReferenceData referenceData;
     @Autowired private AccessControlManager accessControlManager;
 
     @GetMapping
-    public List<Systemmodule> getAll(HttpServletRequest request) {
+    public void getAll(HttpServletRequest request, HttpServletResponse response) throws IOException {
         accessControlManager.authorize(request, "No privilege to get all system modules", UsecaseList.ADD_ROLE, UsecaseList.UPDATE_ROLE);
-        return systemmoduleDao.findAll(DEFAULT_SORT);
+        referenceData.serve(Systemmodule.class, request, response);
     }
 }
@@ -9,9 +9,11 @@ import bit.project.server.util.exception.ConflictException;
 import bit.project.server.util.exception.DataValidationException;
 import bit.project.server.util.exception.NoPrivilegeException;
 import bit.project.server.util.exception.ObjectNotFoundException;
+import bit.project.server.util.blob.FileStorage;
 import bit.project.server.util.helper.FileHelper;
-import bit.project.server.util.helper.PageHelper;
+import bit.project.server.util.helper.Paginator;
 import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.jpasupplement.SearchSpecification;
 import bit.project.server.util.security.Userstatus;
 import bit.project.server.util.validation.EntityValidator;
 import bit.project.server.util.validation.ValidationErrorBag;
@@ -23,13 +25,14 @@ import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import javax.persistence.RollbackException;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Join;
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import bit.project.server.dao.EmployeeDao;
 import bit.project.server.entity.Employee;
 
@@ -41,9 +44,10 @@ public class UserController {
     private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.DESC, "tocreation");
 
     @Autowired private UserDao userDao;
-    @Autowired private UsecaseDao usecaseDao;
     @Autowired private AccessControlManager accessControlManager;
+    @Autowired private Paginator paginator;
     @Autowired private FileDao fileDao;
+    @Autowired private FileStorage fileStorage;
     @Autowired private EmployeeDao employeeDao;
 
     @GetMapping
@@ -51,42 +55,13 @@ public class UserController {
 
         accessControlManager.authorize(request, "No privilege to get all users",  UsecaseList.SHOW_ALL_USERS);
 
-        String userstatus = pageQuery.getSearchParam("userstatus");
-        String username = pageQuery.getSearchParam("username");
-        String displayName = pageQuery.getSearchParam("displayname");
-
-        List<User> users = userDao.findAll(DEFAULT_SORT);
-        Stream<User> stream = users.parallelStream();
-
-        List<User> filteredUsers = stream.filter(user -> {
-            if(user.isSuperAdmin()) return false;
-            if(userstatus!=null)
-                if(!user.getStatus().equalsIgnoreCase(userstatus)) return false;
-            if(username!=null)
-                if(!user.getUsername().toLowerCase().contains(username.toLowerCase())) return false;
-
-            if(displayName != null){
-                String dname = "";
-                Employee employee = user.getEmployee();
-                if(employee != null) dname = employee.getCode() + "-" + employee.getNametitle().getName() + " " + employee.getCallingname();
-                if(!dname.toLowerCase().contains(displayName.toLowerCase())) return false;
-            }
-
-
-            return true;
-        }).collect(Collectors.toList());
-
-        return PageHelper.getAsPage(filteredUsers, pageQuery.getPage(), pageQuery.getSize());
-
+        return userDao.findAll(getSpecification(pageQuery), paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/basic")
     public Page<User> getAllBasic(PageQuery pageQuery, HttpServletRequest request){
         accessControlManager.authorize(request, "No privilege to get all users' basic data",  UsecaseList.SHOW_ALL_USERS);
-        Page<User> userPage = userDao.findAllBasic(PageRequest.of(pageQuery.getPage(), pageQuery.getSize(), DEFAULT_SORT));
-        Stream<User> stream = userPage.getContent().parallelStream();
-        List<User> filteredUsers = stream.filter(user -> !user.isSuperAdmin()).collect(Collectors.toList());
-        return PageHelper.getAsPage(filteredUsers, pageQuery.getPage(), pageQuery.getSize());
+        return userDao.findAllBasic(paginator.getPageRequest(pageQuery, DEFAULT_SORT));
     }
 
     @GetMapping("/{id}")
@@ -179,6 +154,7 @@ public class UserController {
         String newPhotoId = user.getPhoto();
 
         userDao.save(user);
+        accessControlManager.invalidatePrincipals(user);
         fileDao.updateIsusedById(oldPhotoId, false);
         fileDao.updateIsusedById(newPhotoId, true);
 
@@ -200,6 +176,7 @@ public class UserController {
 
         try{
             userDao.deleteById(id);
+            accessControlManager.invalidatePrincipals(user);
             fileDao.updateIsusedById(user.getPhoto(), false);
         }catch (DataIntegrityViolationException | RollbackException e){
             throw new ConflictException("Cannot delete. Because this user already used in another module");
@@ -225,27 +202,23 @@ public class UserController {
 
         user.setPassword(accessControlManager.getHashedPassword(newPassword));
         user = userDao.save(user);
+        accessControlManager.invalidatePrincipals(user);
         return new ResourceLink(user.getId(), "/users/"+user.getId());
     }
 
     @GetMapping("/me")
     public User me(HttpServletRequest request) {
-        return accessControlManager.authenticate(request);
+        return getUser(accessControlManager.authenticate(request).getId());
     }
 
     @GetMapping("/me/usecases")
     public List<Usecase> meUsecases(HttpServletRequest request) {
-        User user = accessControlManager.authenticate(request);
-        if(user.isSuperAdmin()){
-            return usecaseDao.findAll();
-        }else{
-            return accessControlManager.getUsecases(user);
-        }
+        return accessControlManager.getUsecases(accessControlManager.getPrincipal(request));
     }
 
     @PutMapping("/me/password")
     public ResourceLink changeMyPassword(@RequestBody HashMap<String, String> data, HttpServletRequest request){
-        User user = accessControlManager.authenticate(request);
+        User user = getUser(accessControlManager.authenticate(request).getId());
 
         String newPassword = data.getOrDefault("newPassword","");
         String oldPassword = data.getOrDefault("oldPassword","");
@@ -270,7 +243,7 @@ public class UserController {
 
     @PutMapping("/me/photo")
     public ResourceLink changeMyPhoto(@RequestBody HashMap<String, String> data, HttpServletRequest request){
-        User user = accessControlManager.authenticate(request);
+        User user = getUser(accessControlManager.authenticate(request).getId());
 
         String photo = data.getOrDefault("photo", null);
 
@@ -284,7 +257,7 @@ public class UserController {
     }
 
     @GetMapping("/{id}/photo")
-    public HashMap<String, String> getPhoto(@PathVariable Integer id, HttpServletRequest request){
+    public HashMap<String, String> getPhoto(@PathVariable Integer id, HttpServletRequest request) throws IOException {
         accessControlManager.authorize(request, "No privilege to get user photo", UsecaseList.SHOW_USER_DETAILS);
 
         User user = getUser(id);
@@ -298,7 +271,7 @@ public class UserController {
         File photo = optionalFile.get();
         HashMap<String, String> data = new HashMap<>();
 
-        data.put("file", FileHelper.byteArrayToBase64(photo.getFile(), photo.getFilemimetype()));
+        data.put("file", FileHelper.byteArrayToBase64(fileStorage.getBytes(photo), photo.getFilemimetype()));
 
         return data;
     }
@@ -308,4 +281,23 @@ public class UserController {
         if(userOptional.isEmpty()) throw new ObjectNotFoundException("User not found");
         return userOptional.get();
     }
+
+    private SearchSpecification<User> getSpecification(PageQuery pageQuery){
+        SearchSpecification<User> specification = new SearchSpecification<User>(pageQuery)
+                .and((root, query, cb) -> cb.isNotNull(root.get("employee")))
+                .equalIgnoreCase("userstatus", "status")
+                .contains("username");
+
+        String displayName = pageQuery.getSearchParam("displayname");
+        if(displayName != null){
+            specification.and((root, query, cb) -> {
+                Join<User, Employee> employee = root.join("employee");
+                Expression<String> dname = cb.concat(cb.concat(cb.concat(cb.concat(
+                        employee.get("code"), "-"), employee.join("nametitle").get("name")), " "), employee.get("callingname"));
+                return cb.like(cb.lower(dname), SearchSpecification.toContainsPattern(displayName), SearchSpecification.ESCAPE_CHAR);
+            });
+        }
+
+        return specification;
+    }
 }
\ No newline at end of file
@@ -1,14 +1,13 @@
 package bit.project.server.controller;
 
-import bit.project.server.dao.ItemstatusDao;
 import bit.project.server.entity.Itemstatus;
+import bit.project.server.util.reference.ReferenceData;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.CrossOrigin;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 @CrossOrigin
 @RestController
@@ -16,10 +15,10 @@ import java.util.List;
 public class itemstatusController {
 
     @Autowired
-    private ItemstatusDao itemstatusDao;
+    private ReferenceData referenceData;
 
     @GetMapping
-    public List<Itemstatus> getAll(){
-        return itemstatusDao.findAll();
+    public void getAll(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        referenceData.serve(Itemstatus.class, request, response);
     }
 }
\ No newline at end of file
@@ -1,16 +1,13 @@
 package bit.project.server.controller;
 
-import bit.project.server.dao.CivilstatusDao;
-import bit.project.server.dao.SupplierstatusDao;
-import bit.project.server.entity.Civilstatus;
 import bit.project.server.entity.Supplierstatus;
+import bit.project.server.util.reference.ReferenceData;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.CrossOrigin;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 @CrossOrigin
 @RestController
@@ -18,10 +15,10 @@ import java.util.List;
 public class supplierstatusController {
 
     @Autowired
-    private SupplierstatusDao supplierstatusDao;
+    private ReferenceData referenceData;
 
     @GetMapping
-    public List<Supplierstatus> getAll(){
-        return supplierstatusDao.findAll();
+    public void getAll(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        referenceData.serve(Supplierstatus.class, request, response);
     }
 }
\ No newline at end of file
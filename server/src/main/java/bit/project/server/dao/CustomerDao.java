@@ -4,7 +4,11 @@ import bit.project.server.entity.Customer;
 import bit.project.server.entity.Employee;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
@@ -13,7 +17,12 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @RepositoryRestResource(exported=false)
-public interface CustomerDao extends JpaRepository<Customer, Integer>{
+public interface CustomerDao extends JpaRepository<Customer, Integer>, JpaSpecificationExecutor<Customer>{
+
+    @EntityGraph("Customer.list")
+    Page<Customer> findAll(Pageable pageable);
+    @EntityGraph("Customer.list")
+    Page<Customer> findAll(Specification<Customer> specification, Pageable pageable);
 
     @Query("select new Customer (c.id,c.code,c.name) from Customer c")
     Page<Customer> findAllBasic(PageRequest pageRequest);
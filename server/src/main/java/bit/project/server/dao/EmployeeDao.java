@@ -3,12 +3,22 @@ package bit.project.server.dao;
 import bit.project.server.entity.Employee;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 @RepositoryRestResource(exported=false)
-public interface EmployeeDao extends JpaRepository<Employee, Integer>{
+public interface EmployeeDao extends JpaRepository<Employee, Integer>, JpaSpecificationExecutor<Employee>{
+
+    @EntityGraph("Employee.list")
+    Page<Employee> findAll(Pageable pageable);
+    @EntityGraph("Employee.list")
+    Page<Employee> findAll(Specification<Employee> specification, Pageable pageable);
+
     @Query("select new Employee (e.id,e.code,e.nametitle,e.callingname,e.photo) from Employee e")
     Page<Employee> findAllBasic(PageRequest pageRequest);
 
@@ -18,7 +18,7 @@ import java.util.Optional;
 
 @RepositoryRestResource(exported=false)
 public interface FileDao extends JpaRepository<File, String>{
-    @Query("select new File (f.id, f.filemimetype, f.file) from File f where f.id = :id")
+    @Query("select new File (f.id, f.filemimetype, f.file, f.hash) from File f where f.id = :id")
     Optional<File> findFileById (@Param("id") String id);
 
     @Transactional
@@ -26,7 +26,7 @@ public interface FileDao extends JpaRepository<File, String>{
     @Query("update File f set f.isused=:isused where f.id = :id")
     Integer updateIsusedById (@Param("id") String id, @Param("isused") boolean isused);
 
-    @Query("select new File (f.id, f.thumbnail, f.thumbnailmimetype) from File f where f.id = :id")
+    @Query("select new File (f.id, f.thumbnail, f.thumbnailmimetype, f.thumbnailhash, f.filemimetype, f.hash) from File f where f.id = :id")
     Optional<File> findThumbnailById (@Param("id") String id);
 
     @Query("select new File (f.id, f.filesize, f.originalname, f.filemimetype) from File f where f.id = :id")
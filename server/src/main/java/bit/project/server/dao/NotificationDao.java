@@ -10,9 +10,14 @@ import bit.project.server.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
+import javax.transaction.Transactional;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @RepositoryRestResource(exported=false)
@@ -22,4 +27,24 @@ public interface NotificationDao extends JpaRepository<Notification, String>{
 
     long countByUserAndDoread(User user, LocalDateTime doread);
 
+    @Transactional
+    @Modifying
+    @Query("update Notification n set n.doread = :doread where n.user = :user and n.doread is null and n.id in :ids")
+    int updateDoreadByUserAndIdIn(@Param("user") User user, @Param("ids") Collection<String> ids, @Param("doread") LocalDateTime doread);
+
+    @Transactional
+    @Modifying
+    @Query("update Notification n set n.doread = :doread where n.user = :user and n.doread is null and n.dosend <= :before")
+    int updateDoreadByUserAndDosendBefore(@Param("user") User user, @Param("before") LocalDateTime before, @Param("doread") LocalDateTime doread);
+
+    @Transactional
+    @Modifying
+    @Query("update Notification n set n.dodelivered = :dodelivered where n.user = :user and n.dodelivered is null and n.id in :ids")
+    int updateDodeliveredByUserAndIdIn(@Param("user") User user, @Param("ids") Collection<String> ids, @Param("dodelivered") LocalDateTime dodelivered);
+
+    @Transactional
+    @Modifying
+    @Query("update Notification n set n.dodelivered = :dodelivered where n.user = :user and n.dodelivered is null and n.dosend <= :before")
+    int updateDodeliveredByUserAndDosendBefore(@Param("user") User user, @Param("before") LocalDateTime before, @Param("dodelivered") LocalDateTime dodelivered);
+
 }
@@ -0,0 +1,15 @@
+package bit.project.server.dao;
+
+import bit.project.server.entity.Promotion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import java.util.List;
+
+@RepositoryRestResource(exported=false)
+public interface PromotionDao extends JpaRepository<Promotion, Integer>{
+
+    @Query("select distinct p from Promotion p left join fetch p.itemList")
+    List<Promotion> findAllWithItems();
+}
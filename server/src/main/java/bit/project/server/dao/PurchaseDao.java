@@ -5,16 +5,30 @@ import bit.project.server.entity.Purchase;
 import bit.project.server.entity.Supplier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @RepositoryRestResource(exported=false)
-public interface PurchaseDao extends JpaRepository<Purchase, Integer>{
+public interface PurchaseDao extends JpaRepository<Purchase, Integer>, JpaSpecificationExecutor<Purchase>{
+
+    // A load graph, as a fetch graph makes Hibernate initialize collections of the line items one by one
+    @EntityGraph(value = "Purchase.detail", type = EntityGraph.EntityGraphType.LOAD)
+    Optional<Purchase> findById(Integer id);
+
+    @EntityGraph("Purchase.list")
+    Page<Purchase> findAll(Pageable pageable);
+    @EntityGraph("Purchase.list")
+    Page<Purchase> findAll(Specification<Purchase> specification, Pageable pageable);
 
     @Query("select new Purchase (p.id,p.code,p.supplier,p.date) from Purchase p")
     Page<Purchase> findAllBasic(PageRequest pageRequest);
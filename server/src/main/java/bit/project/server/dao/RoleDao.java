@@ -9,11 +9,12 @@ import bit.project.server.entity.Role;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 @RepositoryRestResource(exported=false)
-public interface RoleDao extends JpaRepository<Role, Integer>{
+public interface RoleDao extends JpaRepository<Role, Integer>, JpaSpecificationExecutor<Role>{
     @Query("select new Role(r.id, r.name) from Role r")
     Page<Role> findAllBasic(PageRequest pageRequest);
 
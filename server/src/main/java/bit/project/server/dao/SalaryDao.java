@@ -4,7 +4,11 @@ import bit.project.server.entity.Customer;
 import bit.project.server.entity.Salary;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
@@ -13,7 +17,12 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @RepositoryRestResource(exported=false)
-public interface SalaryDao extends JpaRepository<Salary, Integer>{
+public interface SalaryDao extends JpaRepository<Salary, Integer>, JpaSpecificationExecutor<Salary>{
+
+    @EntityGraph("Salary.list")
+    Page<Salary> findAll(Pageable pageable);
+    @EntityGraph("Salary.list")
+    Page<Salary> findAll(Specification<Salary> specification, Pageable pageable);
 
     @Query("select new Salary (sa.id,sa.code,sa.employee,sa.date,sa.amount) from Salary sa")
     Page<Salary> findAllBasic(PageRequest pageRequest);
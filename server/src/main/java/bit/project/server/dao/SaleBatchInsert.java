@@ -0,0 +1,13 @@
+package bit.project.server.dao;
+
+import bit.project.server.entity.Sale;
+
+import java.util.List;
+
+public interface SaleBatchInsert {
+
+    /**
+     * Inserts the sales and their items with batched JDBC statements and sets the generated sale ids.
+     */
+    void insertAll(List<Sale> sales);
+}
@@ -0,0 +1,57 @@
+package bit.project.server.dao;
+
+import bit.project.server.entity.Sale;
+import bit.project.server.entity.Saleitem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SaleBatchInsertImpl implements SaleBatchInsert {
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertAll(List<Sale> sales) {
+        if(sales.isEmpty()) return;
+
+        List<Object[]> saleRows = new ArrayList<>();
+        for (Sale sale : sales) {
+            saleRows.add(new Object[]{
+                    sale.getCode(),
+                    Timestamp.valueOf(sale.getTocreation()),
+                    sale.getDescription(),
+                    sale.getCreator() == null ? null : sale.getCreator().getId(),
+                    sale.getDate() == null ? null : Date.valueOf(sale.getDate()),
+                    sale.getTotal()
+            });
+        }
+        // The ids are read from the generated keys of the batch, which come back in insert order
+        jdbcTemplate.execute((Connection connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement("insert into sale(code, tocreation, description, creator_id, date, total) values(?,?,?,?,?,?)", Statement.RETURN_GENERATED_KEYS)) {
+                for (Object[] row : saleRows) {
+                    for (int i = 0; i < row.length; i++) statement.setObject(i + 1, row[i]);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (Sale sale : sales) {
+                        if(!keys.next()) throw new IllegalStateException("No generated id for sale " + sale.getCode());
+                        sale.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+
+        List<Object[]> saleitemRows = new ArrayList<>();
+        for (Sale sale : sales) {
+            for (Saleitem saleitem : sale.getSaleitemList()) {
+                saleitemRows.add(new Object[]{sale.getId(), saleitem.getItem().getId(), saleitem.getQty(), saleitem.getUnitprice(), saleitem.getDiscount()});
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into saleitem(sale_id, item_id, qty, unitprice, discount) values(?,?,?,?,?)", saleitemRows);
+    }
+}
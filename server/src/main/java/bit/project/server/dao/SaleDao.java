@@ -4,16 +4,23 @@ import bit.project.server.entity.Purchase;
 import bit.project.server.entity.Sale;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @RepositoryRestResource(exported=false)
-public interface SaleDao extends JpaRepository<Sale, Integer>{
+public interface SaleDao extends JpaRepository<Sale, Integer>, JpaSpecificationExecutor<Sale>, SaleBatchInsert{
+
+    // A load graph, as a fetch graph makes Hibernate initialize collections of the line items one by one
+    @EntityGraph(value = "Sale.detail", type = EntityGraph.EntityGraphType.LOAD)
+    Optional<Sale> findById(Integer id);
 
     @Query("select new Sale (s.id, s.code, s.date) from Sale s")
     Page<Sale> findAllBasic(PageRequest pageRequest);
@@ -0,0 +1,14 @@
+package bit.project.server.dao;
+
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Stockmovement;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+@RepositoryRestResource(exported=false)
+public interface StockmovementDao extends JpaRepository<Stockmovement, Long> {
+
+    Page<Stockmovement> findAllByItem(Item item, PageRequest pageRequest);
+}
@@ -4,12 +4,21 @@ import bit.project.server.entity.Customer;
 import bit.project.server.entity.Supplier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 @RepositoryRestResource(exported=false)
-public interface SupplierDao extends JpaRepository<Supplier, Integer>{
+public interface SupplierDao extends JpaRepository<Supplier, Integer>, JpaSpecificationExecutor<Supplier>{
+
+    @EntityGraph("Supplier.list")
+    Page<Supplier> findAll(Pageable pageable);
+    @EntityGraph("Supplier.list")
+    Page<Supplier> findAll(Specification<Supplier> specification, Pageable pageable);
 
     @Query("select new Supplier (s.id,s.code,s.name,s.supplierstatus) from Supplier s")
     Page<Supplier> findAllBasic(PageRequest pageRequest);
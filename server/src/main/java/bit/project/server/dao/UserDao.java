@@ -4,15 +4,26 @@ import bit.project.server.entity.User;
 import bit.project.server.util.jpasupplement.CriteriaQuerySupplement;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import java.util.List;
 import bit.project.server.entity.Employee;
 
 @RepositoryRestResource(exported=false)
-public interface UserDao extends JpaRepository<User, Integer>, CriteriaQuerySupplement<User> {
-    @Query("select new User(u.id, u.username, u.employee) from User u")
+public interface UserDao extends JpaRepository<User, Integer>, JpaSpecificationExecutor<User>, CriteriaQuerySupplement<User> {
+
+    @EntityGraph("User.list")
+    Page<User> findAll(Pageable pageable);
+    @EntityGraph("User.list")
+    Page<User> findAll(Specification<User> specification, Pageable pageable);
+
+    // Super admins are the users without an employee
+    @Query("select new User(u.id, u.username, u.employee) from User u where u.employee is not null")
     Page<User> findAllBasic(PageRequest pageRequest);
 
     @Query("select u from User u where  u.employee is null")
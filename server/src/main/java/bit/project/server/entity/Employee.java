@@ -3,6 +3,8 @@ package bit.project.server.entity;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import javax.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.LocalDate;
 import javax.persistence.Id;
 import javax.persistence.Lob;
@@ -21,6 +23,12 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @NoArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@NamedEntityGraph(name = "Employee.list", attributeNodes = {
+        @NamedAttributeNode("creator"), @NamedAttributeNode("nametitle"), @NamedAttributeNode("civilstatus"),
+        @NamedAttributeNode("gender"), @NamedAttributeNode("designation"), @NamedAttributeNode("employeestatus")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Employee{
     @Id
     @GeneratedValue(strategy=GenerationType.IDENTITY)
@@ -55,22 +63,22 @@ public class Employee{
     private LocalDateTime tocreation;
 
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Nametitle nametitle;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Civilstatus civilstatus;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Gender gender;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Designation designation;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Employeestatus employeestatus;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonIgnoreProperties({"creator","status","tocreation","roleList"})
     private User creator;
 
@@ -3,6 +3,8 @@ package bit.project.server.entity;
 import lombok.Data;
 import java.util.List;
 import javax.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import javax.persistence.Id;
 import lombok.NoArgsConstructor;
 import javax.persistence.Entity;
@@ -17,6 +19,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @NoArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Employeestatus{
     @Id
     @GeneratedValue(strategy=GenerationType.IDENTITY)
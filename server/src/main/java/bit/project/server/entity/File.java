@@ -26,6 +26,8 @@ public class File {
     private byte[] file;
     @Lob
     private byte[] thumbnail;
+    private String hash;
+    private String thumbnailhash;
     private String filemimetype;
     private String thumbnailmimetype;
     private Long filesize;
@@ -50,6 +52,22 @@ public class File {
         this.filemimetype = filemimetype;
     }
 
+    public File(String id, byte[] thumbnail, String thumbnailmimetype, String thumbnailhash, String filemimetype, String hash){
+        this.id = id;
+        this.thumbnail =thumbnail;
+        this.thumbnailmimetype = thumbnailmimetype;
+        this.thumbnailhash = thumbnailhash;
+        this.filemimetype = filemimetype;
+        this.hash = hash;
+    }
+
+    public File(String id, String filemimetype, byte[] file, String hash){
+        this.id = id;
+        this.file = file;
+        this.filemimetype = filemimetype;
+        this.hash = hash;
+    }
+
     public File(String id, LocalDateTime tocreation){
         this.id = id;
         this.tocreation = tocreation;
@@ -7,6 +7,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import javax.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -16,6 +19,11 @@ import java.util.List;
 @NoArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@NamedEntityGraph(name = "Item.list", attributeNodes = {
+        @NamedAttributeNode("creator"), @NamedAttributeNode("category"), @NamedAttributeNode("itemstatus")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Item {
 
     @Id
@@ -29,7 +37,7 @@ public class Item {
     @Lob
     private String description;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonIgnoreProperties({"creator","status","tocreation","roleList"})
     private User creator;
 
@@ -37,19 +45,22 @@ public class Item {
 
     private String photo;
 
+    @Column(updatable = false)
     private Integer qty;
 
     private Integer rop;
 
     private BigDecimal price;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Category category;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Itemstatus itemstatus;
 
     @ManyToMany
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(
             name="itemsupplier",
             joinColumns=@JoinColumn(name="item_id", referencedColumnName="id"),
@@ -61,6 +72,19 @@ public class Item {
     @OneToMany(mappedBy = "item")
     private List<Purchaseitem> purchaseitemList;
 
+    @Transient
+    private Double salesvelocity;
+
+    @Transient
+    private Integer computedrop;
+
+    @Transient
+    private Double daysofcover;
+
+    public Item(Integer id) {
+        this.id = id;
+    }
+
     public Item(Integer id, String code) {
         this.id = id;
         this.code = code;
@@ -0,0 +1,59 @@
+package bit.project.server.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Entity
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+public class Promotion {
+
+    @Id
+    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    private Integer id;
+
+    private String name;
+
+    private String type;
+
+    private Integer buyqty;
+
+    private Integer payqty;
+
+    private Integer percentage;
+
+    private BigDecimal price;
+
+    private LocalDate dostart;
+
+    private LocalDate doend;
+
+    private LocalDateTime tocreation;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JsonIgnoreProperties({"creator","status","tocreation","roleList"})
+    private User creator;
+
+    @ManyToMany
+    @JoinTable(
+            name="promotionitem",
+            joinColumns=@JoinColumn(name="promotion_id", referencedColumnName="id"),
+            inverseJoinColumns=@JoinColumn(name="item_id", referencedColumnName="id")
+    )
+    @JsonIgnoreProperties({"creator","tocreation","description","photo","qty","rop","category","itemstatus","supplierList"})
+    private List<Item> itemList;
+
+    public Promotion(Integer id) {
+        this.id = id;
+    }
+}
@@ -17,6 +17,15 @@ import java.util.List;
 @NoArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@NamedEntityGraphs({
+        @NamedEntityGraph(name = "Purchase.list", attributeNodes = @NamedAttributeNode("supplier")),
+        @NamedEntityGraph(name = "Purchase.detail", attributeNodes = {
+                @NamedAttributeNode("creator"), @NamedAttributeNode("supplier"), @NamedAttributeNode(value = "purchaseitemList", subgraph = "purchaseitem")
+        }, subgraphs = {
+                @NamedSubgraph(name = "purchaseitem", attributeNodes = @NamedAttributeNode(value = "item", subgraph = "item")),
+                @NamedSubgraph(name = "item", attributeNodes = {@NamedAttributeNode("category"), @NamedAttributeNode("itemstatus")})
+        })
+})
 public class Purchase {
     @Id
     @GeneratedValue(strategy= GenerationType.IDENTITY)
@@ -29,11 +38,11 @@ public class Purchase {
     @Lob
     private String description;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonIgnoreProperties({"creator","status","tocreation","roleList"})
     private User creator;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Supplier supplier;
 
     private LocalDate date;
@@ -28,7 +28,7 @@ public class Purchaseitem {
     @ManyToOne(fetch = FetchType.LAZY)
     private Purchase purchase;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Item item;
 
     public Purchaseitem(Integer id) {
@@ -15,6 +15,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@NamedEntityGraph(name = "Salary.list", attributeNodes = {@NamedAttributeNode("creator"), @NamedAttributeNode("employee")})
 public class Salary {
     @Id
     @GeneratedValue(strategy= GenerationType.IDENTITY)
@@ -27,11 +28,11 @@ public class Salary {
     @Lob
     private String description;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonIgnoreProperties({"creator","status","tocreation","roleList"})
     private User creator;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Employee employee;
 
     private LocalDate date;
@@ -16,6 +16,12 @@ import java.util.List;
 @NoArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@NamedEntityGraph(name = "Sale.detail", attributeNodes = {
+        @NamedAttributeNode("creator"), @NamedAttributeNode(value = "saleitemList", subgraph = "saleitem")
+}, subgraphs = {
+        @NamedSubgraph(name = "saleitem", attributeNodes = @NamedAttributeNode(value = "item", subgraph = "item")),
+        @NamedSubgraph(name = "item", attributeNodes = {@NamedAttributeNode("category"), @NamedAttributeNode("itemstatus")})
+})
 public class Sale {
 
     @Id
@@ -29,7 +35,7 @@ public class Sale {
     @Lob
     private String description;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonIgnoreProperties({"creator","status","tocreation","roleList"})
     private User creator;
 
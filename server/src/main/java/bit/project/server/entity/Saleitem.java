@@ -25,13 +25,15 @@ public class Saleitem {
     @ManyToOne(fetch = FetchType.LAZY)
     private Sale sale;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Item item;
 
     private Integer qty;
 
     private BigDecimal unitprice;
 
+    private BigDecimal discount;
+
 
     public Saleitem(Integer id) {
         this.id = id;
@@ -43,6 +43,9 @@ public class Servicelog{
 
     private LocalDateTime torequest;
 
+    @Max(value=999999999, message="Maximum value is 999999999")
+    private Integer duration;
+
     @Lob
     @Size(min=0, max=65535, message="Maximum character count is 65535")
     private String url;
@@ -7,6 +7,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import javax.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -15,6 +17,11 @@ import java.util.List;
 @NoArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@NamedEntityGraph(name = "Supplier.list", attributeNodes = {
+        @NamedAttributeNode("creator"), @NamedAttributeNode("suppliertype"), @NamedAttributeNode("supplierstatus")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Supplier {
 
     @Id
@@ -43,10 +50,12 @@ public class Supplier {
 
     private String fax;
 
-    @ManyToOne
+    private Integer leadtime;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     private Suppliertype suppliertype;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Supplierstatus supplierstatus;
 
     @JsonIgnore
@@ -57,7 +66,7 @@ public class Supplier {
     @OneToMany(mappedBy = "supplier")
     private List<Purchase> purchaseList;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonIgnoreProperties({"creator","status","tocreation","roleList"})
     private User creator;
 
@@ -7,6 +7,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import javax.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.time.LocalDateTime;
@@ -17,6 +20,11 @@ import java.util.List;
 @NoArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@NamedEntityGraph(name = "User.list", attributeNodes = {
+        @NamedAttributeNode("creator"), @NamedAttributeNode(value = "employee", subgraph = "employee")
+}, subgraphs = @NamedSubgraph(name = "employee", attributeNodes = @NamedAttributeNode("nametitle")))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class User{
     @Id
     @GeneratedValue(strategy=GenerationType.IDENTITY)
@@ -70,6 +78,7 @@ public class User{
     private List<User> userListBycreator;
 
     @ManyToMany
+    @BatchSize(size = 100)
     @JoinTable(
             name="userrole",
             joinColumns=@JoinColumn(name="user_id", referencedColumnName="id"),
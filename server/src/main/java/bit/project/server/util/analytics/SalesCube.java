@@ -0,0 +1,488 @@
+package bit.project.server.util.analytics;
+
+import bit.project.server.entity.Sale;
+import bit.project.server.entity.Saleitem;
+import bit.project.server.util.dto.SalesPoint;
+import bit.project.server.util.dto.SalesQuery;
+import bit.project.server.util.dto.SalesTotal;
+import bit.project.server.util.exception.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Sales quantities and revenue in memory, aggregated by day, item and cashier, with the category of the item,
+ * for the reporting queries. The cells are stored column by column in primitive arrays, so a query is a scan
+ * of a few arrays and never touches the database.
+ * The cube is built from the sales of the retention period by loading one month per task on a small thread pool,
+ * and is kept current by the sale endpoints. It is rebuilt every night, which drops days past the retention period
+ * and picks up changes made on other nodes and category changes of items.
+ * Sales saved, updated and deleted during a build are queued and applied after it. The load reads the sales up to
+ * the highest id at its start in sale id order, and skips a sale that is being changed by the time it reaches it;
+ * so the load counted a changed sale as it was before the change, or not at all, in which case it is added back
+ * before the queued changes are applied.
+ * Revenue is net of promotions: quantity times unit price of the sale items, less their discount.
+ */
+@Component
+public class SalesCube {
+
+    public enum Dimension{
+        ITEM,
+        CATEGORY,
+        CASHIER
+    }
+
+    public enum Measure{
+        QTY,
+        REVENUE
+    }
+
+    // A sale without a date is counted on the day it was created, as Change does
+    private static final String SALE_DATE = "coalesce(s.date, cast(s.tocreation as date))";
+
+    private static final String LOAD_QUERY = "select s.id, " + SALE_DATE + " as saledate, s.creator_id, si.item_id, i.category_id, si.qty, si.unitprice, si.discount " +
+            "from sale s inner join saleitem si on si.sale_id=s.id inner join item i on i.id=si.item_id " +
+            "where s.id <= ? and " + SALE_DATE + " >= ? and " + SALE_DATE + " < ? order by s.id";
+
+    private final Logger logger = LoggerFactory.getLogger(SalesCube.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int retentionDays;
+    private final int loadThreads;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock changeLock = new ReentrantReadWriteLock();
+    private final ReentrantLock buildLock = new ReentrantLock();
+    private final Map<Integer, Integer> categories = new ConcurrentHashMap<>();
+
+    private Cells cells = new Cells();
+    private Build building;
+
+    public SalesCube(JdbcTemplate jdbcTemplate,
+                     @Value("${analytics.retention-days:366}") int retentionDays,
+                     @Value("${analytics.load-threads:4}") int loadThreads){
+        this.jdbcTemplate = jdbcTemplate;
+        this.retentionDays = retentionDays;
+        this.loadThreads = loadThreads;
+    }
+
+    /**
+     * Loads the cube from the database. Sales added, updated and deleted while it loads are queued and applied once
+     * it is swapped in.
+     */
+    @Scheduled(cron = "${analytics.rebuild-cron:0 30 2 * * *}")
+    public void build(){
+        buildLock.lock();
+        try {
+            Build build;
+            // Waits for updates and deletes in progress to be recorded, so every one the load overlaps is marked
+            changeLock.writeLock().lock();
+            try {
+                lock.writeLock().lock();
+                try {
+                    long watermark = Optional.ofNullable(jdbcTemplate.queryForObject("select max(id) from sale", Long.class)).orElse(0L);
+                    LocalDate end = LocalDate.now().plusDays(1);
+                    building = build = new Build(watermark, end.minusDays(retentionDays), end);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } finally {
+                changeLock.writeLock().unlock();
+            }
+
+            long start = System.currentTimeMillis();
+            Cells loaded = null;
+            try {
+                categories.clear();
+                jdbcTemplate.query("select id, category_id from item", rs -> {
+                    categories.put(rs.getInt("id"), rs.getInt("category_id"));
+                });
+                loaded = load(build);
+            } catch (RuntimeException | InterruptedException | ExecutionException e) {
+                logger.warn("Unable to build the sales cube", e);
+                if(e instanceof InterruptedException) Thread.currentThread().interrupt();
+            } finally {
+                lock.writeLock().lock();
+                try {
+                    if(loaded != null){
+                        // Sales added up to the watermark were committed before the load began, so it counted them
+                        for (Change change : build.added) {
+                            if(change.saleId != null && change.saleId > build.watermark) apply(loaded, change, change.sign);
+                        }
+                        // Changed sales the load skipped are counted as they were, so their queued changes apply to them
+                        synchronized (build){
+                            for (Change change : build.skipped) apply(loaded, change, -change.sign);
+                        }
+                        for (Change change : build.replaced) apply(loaded, change, change.sign);
+                        cells = loaded;
+                    }else{
+                        for (Change change : build.added) apply(cells, change, change.sign);
+                        for (Change change : build.replaced) apply(cells, change, change.sign);
+                    }
+                    building = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            if(loaded != null) logger.info("Built the sales cube with " + loaded.size + " cells in " + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    /**
+     * Counts a saved sale.
+     */
+    public void added(Sale sale){
+        record(resolve(new Change(sale, 1)), false);
+    }
+
+    /**
+     * Runs the save of an update or a delete of a sale, then takes back the old sale and counts the sale the save
+     * returned, if any. Has to be given the sale as it was loaded, before the change.
+     */
+    public Sale replace(Sale oldSale, Supplier<Sale> save){
+        changeLock.readLock().lock();
+        try {
+            Change removed = resolve(new Change(oldSale, -1));
+            Build build;
+            lock.readLock().lock();
+            try {
+                build = building;
+            } finally {
+                lock.readLock().unlock();
+            }
+            // Before the save, so the load can no longer read the sale as changed and count it
+            if(build != null) build.mark(removed);
+
+            Sale saved = save.get();
+            record(removed, true);
+            if(saved != null) record(resolve(new Change(saved, 1)), true);
+            return saved;
+        } finally {
+            changeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The groups of the dimension with the highest totals of the measure, at most n of them.
+     */
+    public List<SalesTotal> getTop(Dimension dimension, Measure measure, int n, SalesQuery query){
+        if(n < 1) throw new BadRequestException("n has to be positive");
+        List<SalesTotal> totals = getBreakdown(dimension, query);
+        Comparator<SalesTotal> comparator = measure == Measure.QTY ? Comparator.comparing(SalesTotal::getQty) : Comparator.comparing(SalesTotal::getRevenue);
+        totals.sort(comparator.reversed());
+        return totals.size() > n ? new ArrayList<>(totals.subList(0, n)) : totals;
+    }
+
+    /**
+     * The totals of every group of the dimension.
+     */
+    public List<SalesTotal> getBreakdown(Dimension dimension, SalesQuery query){
+        int from = (int) getFrom(query).toEpochDay();
+        int to = (int) getTo(query).toEpochDay();
+
+        Map<Integer, long[]> groups = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            Cells c = cells;
+            int[] keys = dimension == Dimension.ITEM ? c.items : dimension == Dimension.CATEGORY ? c.categories : c.cashiers;
+            for (int i = 0; i < c.size; i++) {
+                if(!matches(c, i, from, to, query)) continue;
+                long[] total = groups.computeIfAbsent(keys[i], key -> new long[2]);
+                total[0] += c.qtys[i];
+                total[1] += c.revenues[i];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<SalesTotal> totals = new ArrayList<>(groups.size());
+        for (Map.Entry<Integer, long[]> group : groups.entrySet()) {
+            totals.add(new SalesTotal(group.getKey(), group.getValue()[0], toAmount(group.getValue()[1])));
+        }
+        return totals;
+    }
+
+    /**
+     * Daily totals from the first to the last day of the query, including days without sales.
+     */
+    public List<SalesPoint> getSeries(SalesQuery query){
+        LocalDate fromDate = getFrom(query);
+        int from = (int) fromDate.toEpochDay();
+        int to = (int) getTo(query).toEpochDay();
+        int length = Math.max(0, to - from + 1);
+        long[] qtys = new long[length];
+        long[] revenues = new long[length];
+
+        lock.readLock().lock();
+        try {
+            Cells c = cells;
+            for (int i = 0; i < c.size; i++) {
+                if(!matches(c, i, from, to, query)) continue;
+                qtys[c.days[i] - from] += c.qtys[i];
+                revenues[c.days[i] - from] += c.revenues[i];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<SalesPoint> points = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) points.add(new SalesPoint(fromDate.plusDays(i), qtys[i], toAmount(revenues[i])));
+        return points;
+    }
+
+    private LocalDate getFrom(SalesQuery query){
+        LocalDate first = LocalDate.now().minusDays(retentionDays - 1);
+        if(query.getFrom() == null || query.getFrom().isBefore(first)) return first;
+        return query.getFrom();
+    }
+
+    private LocalDate getTo(SalesQuery query){
+        LocalDate today = LocalDate.now();
+        if(query.getTo() == null || query.getTo().isAfter(today)) return today;
+        return query.getTo();
+    }
+
+    private static boolean matches(Cells c, int i, int from, int to, SalesQuery query){
+        return c.days[i] >= from && c.days[i] <= to
+                && (query.getItem() == null || c.items[i] == query.getItem())
+                && (query.getCategory() == null || c.categories[i] == query.getCategory())
+                && (query.getCashier() == null || c.cashiers[i] == query.getCashier());
+    }
+
+    // Resolved before the lock is taken, as an item that is not known yet costs a query
+    private Change resolve(Change change){
+        change.categories = new int[change.items.length];
+        for (int i = 0; i < change.items.length; i++) change.categories[i] = getCategory(change.items[i]);
+        return change;
+    }
+
+    private void record(Change change, boolean replaced){
+        lock.writeLock().lock();
+        try {
+            if(building == null) apply(cells, change, change.sign);
+            else if(replaced) building.replaced.add(change);
+            else building.added.add(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Cells target, Change change, int sign){
+        for (int i = 0; i < change.items.length; i++) {
+            target.add(change.day, change.items[i], change.categories[i], change.cashier,
+                    sign * change.qtys[i], sign * change.revenues[i]);
+        }
+    }
+
+    private int getCategory(int item){
+        return categories.computeIfAbsent(item, id -> {
+            Integer category = jdbcTemplate.queryForObject("select category_id from item where id=?", Integer.class, id);
+            return category == null ? 0 : category;
+        });
+    }
+
+    private Cells load(Build build) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(loadThreads);
+        try {
+            List<Future<Cells>> parts = new ArrayList<>();
+            for (int i = 0; i < build.bounds.length - 1; i++) {
+                int part = i;
+                parts.add(executor.submit(() -> loadPart(build, part)));
+            }
+
+            Cells loaded = new Cells();
+            for (Future<Cells> part : parts) loaded.addAll(part.get());
+            return loaded;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Cells loadPart(Build build, int index){
+        Cells part = new Cells();
+        int[] sale = new int[1];
+        boolean[] skip = new boolean[1];
+        jdbcTemplate.query(LOAD_QUERY, rs -> {
+            // The lines of a sale are consecutive, so whether it is skipped is decided once for all of them
+            int saleId = rs.getInt("id");
+            if(saleId != sale[0]){
+                sale[0] = saleId;
+                skip[0] = build.reach(index, saleId);
+            }
+            if(skip[0]) return;
+
+            int qty = rs.getInt("qty");
+            part.add((int) rs.getDate("saledate").toLocalDate().toEpochDay(), rs.getInt("item_id"), rs.getInt("category_id"),
+                    rs.getInt("creator_id"), qty, qty * toCents(rs.getBigDecimal("unitprice")) - toCents(rs.getBigDecimal("discount")));
+        }, build.watermark, Date.valueOf(LocalDate.ofEpochDay(build.bounds[index])), Date.valueOf(LocalDate.ofEpochDay(build.bounds[index + 1])));
+        return part;
+    }
+
+    private static long toCents(BigDecimal amount){
+        if(amount == null) return 0;
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    private static BigDecimal toAmount(long cents){
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * The lines of a sale to add to or take from the cube.
+     */
+    private static class Change {
+        private final Integer saleId;
+        private final int sign;
+        private final int day;
+        private final int cashier;
+        private final int[] items;
+        private final long[] qtys;
+        private final long[] revenues;
+        private int[] categories;
+
+        private Change(Sale sale, int sign){
+            this.saleId = sale.getId();
+            this.sign = sign;
+            LocalDate date = sale.getDate() != null ? sale.getDate() : sale.getTocreation().toLocalDate();
+            this.day = (int) date.toEpochDay();
+            this.cashier = sale.getCreator() == null ? 0 : sale.getCreator().getId();
+
+            List<Saleitem> saleitems = sale.getSaleitemList() == null ? Collections.emptyList() : sale.getSaleitemList();
+            items = new int[saleitems.size()];
+            qtys = new long[saleitems.size()];
+            revenues = new long[saleitems.size()];
+            for (int i = 0; i < saleitems.size(); i++) {
+                Saleitem saleitem = saleitems.get(i);
+                items[i] = saleitem.getItem().getId();
+                qtys[i] = saleitem.getQty();
+                revenues[i] = saleitem.getQty() * toCents(saleitem.getUnitprice()) - toCents(saleitem.getDiscount());
+            }
+        }
+    }
+
+    /**
+     * A build in progress: the changes queued while it loads, and which changed sales the load skipped.
+     * The load is split in parts of a month, each reading its sales in id order.
+     */
+    private static class Build {
+        private final long watermark;
+        private final int[] bounds;
+        private final int[] reached;
+        private final Set<Integer> marked = new HashSet<>();
+        private final List<Change> skipped = new ArrayList<>();
+        private final List<Change> added = new ArrayList<>();
+        private final List<Change> replaced = new ArrayList<>();
+
+        private Build(long watermark, LocalDate start, LocalDate end){
+            this.watermark = watermark;
+            List<LocalDate> dates = new ArrayList<>();
+            for (LocalDate from = start; from.isBefore(end); from = from.plusMonths(1)) dates.add(from);
+            dates.add(end);
+            bounds = dates.stream().mapToInt(date -> (int) date.toEpochDay()).toArray();
+            reached = new int[bounds.length - 1];
+        }
+
+        /**
+         * Records that the part has reached the sale, and whether the sale is skipped as it is being changed.
+         */
+        private synchronized boolean reach(int index, int saleId){
+            reached[index] = saleId;
+            return marked.contains(saleId);
+        }
+
+        /**
+         * Marks a sale as being changed, given the change that takes it back as it was. The load counted it as it
+         * was if its part had already reached it, and skips it otherwise.
+         */
+        private synchronized void mark(Change removed){
+            if(removed.saleId == null || removed.saleId > watermark || !marked.add(removed.saleId)) return;
+            int index = -1;
+            for (int i = 0; i < reached.length; i++) if(removed.day >= bounds[i] && removed.day < bounds[i + 1]) index = i;
+            if(index < 0 || reached[index] < removed.saleId) skipped.add(removed);
+        }
+    }
+
+    /**
+     * Cells of the cube in parallel arrays, with a hash index from day, item and cashier to the row of a cell.
+     */
+    private static class Cells {
+        private int size;
+        private int[] days = new int[1024];
+        private int[] items = new int[1024];
+        private int[] categories = new int[1024];
+        private int[] cashiers = new int[1024];
+        private long[] qtys = new long[1024];
+        private long[] revenues = new long[1024];
+        private final Map<Key, Integer> rows = new HashMap<>();
+
+        private void add(int day, int item, int category, int cashier, long qty, long revenue){
+            Key key = new Key(day, item, cashier);
+            Integer row = rows.get(key);
+            if(row == null){
+                if(size == days.length) grow();
+                row = size++;
+                days[row] = day;
+                items[row] = item;
+                categories[row] = category;
+                cashiers[row] = cashier;
+                rows.put(key, row);
+            }
+            qtys[row] += qty;
+            revenues[row] += revenue;
+        }
+
+        private void addAll(Cells other){
+            for (int i = 0; i < other.size; i++) {
+                add(other.days[i], other.items[i], other.categories[i], other.cashiers[i], other.qtys[i], other.revenues[i]);
+            }
+        }
+
+        private void grow(){
+            int length = days.length * 2;
+            days = Arrays.copyOf(days, length);
+            items = Arrays.copyOf(items, length);
+            categories = Arrays.copyOf(categories, length);
+            cashiers = Arrays.copyOf(cashiers, length);
+            qtys = Arrays.copyOf(qtys, length);
+            revenues = Arrays.copyOf(revenues, length);
+        }
+    }
+
+    private static class Key {
+        private final int day;
+        private final int item;
+        private final int cashier;
+
+        private Key(int day, int item, int cashier){
+            this.day = day;
+            this.item = item;
+            this.cashier = cashier;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return day == key.day && item == key.item && cashier == key.cashier;
+        }
+
+        @Override
+        public int hashCode(){
+            return (day * 31 + item) * 31 + cashier;
+        }
+    }
+}
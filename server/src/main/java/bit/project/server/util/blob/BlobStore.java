@@ -0,0 +1,43 @@
+package bit.project.server.util.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Content-addressed storage for file contents. A blob is stored under the SHA-256 hash of its content,
+ * so storing the same content twice keeps one copy.
+ */
+public interface BlobStore {
+
+    /**
+     * Streams the content into the store and returns its key.
+     */
+    String put(InputStream in) throws IOException;
+
+    boolean exists(String key);
+
+    /**
+     * Marks the blob as just used, which keeps the collector from deleting it for a grace period.
+     * Returns false when the blob does not exist.
+     */
+    boolean touch(String key) throws IOException;
+
+    Instant lastModified(String key) throws IOException;
+
+    long size(String key) throws IOException;
+
+    InputStream open(String key) throws IOException;
+
+    void transferTo(String key, long position, long count, WritableByteChannel target) throws IOException;
+
+    /**
+     * The blob as a file on local disk, which the servlet container can send without copying it through the heap,
+     * or null when the store is not on local disk.
+     */
+    Path getLocalPath(String key);
+
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,197 @@
+package bit.project.server.util.blob;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes uploaded files that nothing refers to, a small chunk of the file table at a time.
+ * Each run walks the table by primary key; every tick of the schedule handles one chunk, so the collector
+ * never holds locks on more than a chunk of rows and its load is bounded by the chunk size and the tick interval.
+ * Along the way the isused flags are reconciled with the actual references from items, suppliers, users and employees.
+ * Files younger than the grace period are never deleted, as they may be uploads whose entity is not saved yet.
+ * A blob is removed only when no file or thumbnail row refers to it any more, and it was not stored or reused
+ * within the grace period either, as a file or thumbnail row about to refer to it may not be saved yet.
+ */
+@Component
+public class FileCollector {
+
+    private static final String REFERENCES_QUERY = "select photo id from item where photo in (:ids) " +
+            "union select logo from supplier where logo in (:ids) " +
+            "union select photo from user where photo in (:ids) " +
+            "union select photo from employee where photo in (:ids)";
+    private static final String UNREFERENCED_CONDITION = "not exists(select 1 from item where item.photo=file.id) " +
+            "and not exists(select 1 from supplier where supplier.logo=file.id) " +
+            "and not exists(select 1 from user where user.photo=file.id) " +
+            "and not exists(select 1 from employee where employee.photo=file.id)";
+    private static final String BLOB_REFERENCES_QUERY = "select hash from file where hash in (:hashes) " +
+            "union select thumbnailhash from file where thumbnailhash in (:hashes) " +
+            "union select hash from filethumbnail where hash in (:hashes)";
+
+    private final Logger logger = LoggerFactory.getLogger(FileCollector.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final BlobStore blobStore;
+    private final int batchSize;
+    private final Duration gracePeriod;
+    private final long runIntervalMillis;
+    private final Timer runTimer;
+
+    private final AtomicLong deletedFiles = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    private String cursor = "";
+    private long runStart;
+    private long nextRun;
+    private long runDeletedFiles;
+    private long runReclaimedBytes;
+
+    public FileCollector(JdbcTemplate jdbcTemplate, BlobStore blobStore, MeterRegistry meterRegistry,
+                         @Value("${file.gc-batch-size:100}") int batchSize,
+                         @Value("${file.gc-grace-minutes:60}") long graceMinutes,
+                         @Value("${file.gc-run-interval-millis:3600000}") long runIntervalMillis){
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.blobStore = blobStore;
+        this.batchSize = batchSize;
+        this.gracePeriod = Duration.ofMinutes(graceMinutes);
+        this.runIntervalMillis = runIntervalMillis;
+
+        FunctionCounter.builder("file.gc.deleted", deletedFiles, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("file.gc.reclaimed", reclaimedBytes, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+        runTimer = Timer.builder("file.gc.run").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${file.gc-chunk-interval-millis:5000}", initialDelay = 60000)
+    public void collect(){
+        long now = System.currentTimeMillis();
+        if(now < nextRun) return;
+        if(runStart == 0) runStart = now;
+
+        try {
+            if(collectChunk()) return;
+        } catch (RuntimeException e) {
+            logger.warn("Unable to collect unused files", e);
+            return;
+        }
+
+        long duration = System.currentTimeMillis() - runStart;
+        runTimer.record(duration, TimeUnit.MILLISECONDS);
+        logger.info("Deleted " + runDeletedFiles + " unused files and reclaimed " + runReclaimedBytes + " bytes in " + duration + " ms");
+        cursor = "";
+        runStart = 0;
+        runDeletedFiles = 0;
+        runReclaimedBytes = 0;
+        nextRun = System.currentTimeMillis() + runIntervalMillis;
+    }
+
+    /**
+     * Handles the next chunk of the run. Returns false when the end of the table was reached.
+     */
+    private boolean collectChunk(){
+        List<Row> rows = jdbcTemplate.query("select id, isused, tocreation, filesize, hash, thumbnailhash from file where id > ? order by id limit ?",
+                (rs, rowNum) -> new Row(rs.getString("id"), rs.getBoolean("isused"), rs.getTimestamp("tocreation"),
+                        rs.getLong("filesize"), rs.getString("hash"), rs.getString("thumbnailhash")),
+                cursor, batchSize);
+        if(rows.isEmpty()) return false;
+        cursor = rows.get(rows.size() - 1).id;
+
+        List<String> ids = new ArrayList<>();
+        for (Row row : rows) ids.add(row.id);
+        Set<String> referenced = new HashSet<>(namedParameterJdbcTemplate.queryForList(REFERENCES_QUERY, new MapSqlParameterSource("ids", ids), String.class));
+
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(gracePeriod));
+        List<String> used = new ArrayList<>();
+        List<String> unused = new ArrayList<>();
+        Map<String, Row> garbage = new HashMap<>();
+        for (Row row : rows) {
+            boolean isReferenced = referenced.contains(row.id);
+            if(isReferenced && !row.isused) used.add(row.id);
+            if(!isReferenced && row.isused) unused.add(row.id);
+            if(!isReferenced && row.tocreation != null && row.tocreation.before(cutoff)) garbage.put(row.id, row);
+        }
+
+        if(!used.isEmpty()) namedParameterJdbcTemplate.update("update file set isused=1 where id in (:ids)", new MapSqlParameterSource("ids", used));
+        if(!unused.isEmpty()) namedParameterJdbcTemplate.update("update file set isused=0 where id in (:ids) and " + UNREFERENCED_CONDITION, new MapSqlParameterSource("ids", unused));
+        if(!garbage.isEmpty()) delete(garbage);
+        return true;
+    }
+
+    private void delete(Map<String, Row> garbage){
+        MapSqlParameterSource ids = new MapSqlParameterSource("ids", garbage.keySet());
+        List<String> thumbnailHashes = namedParameterJdbcTemplate.queryForList("select hash from filethumbnail where file_id in (:ids)", ids, String.class);
+
+        // References are checked again in the delete itself, for entities saved since the chunk was read
+        namedParameterJdbcTemplate.update("delete from file where id in (:ids) and " + UNREFERENCED_CONDITION, ids);
+        for (String id : namedParameterJdbcTemplate.queryForList("select id from file where id in (:ids)", ids, String.class)) garbage.remove(id);
+        if(garbage.isEmpty()) return;
+        namedParameterJdbcTemplate.update("delete from filethumbnail where file_id in (:ids)", new MapSqlParameterSource("ids", garbage.keySet()));
+
+        long bytes = 0;
+        Set<String> hashes = new HashSet<>(thumbnailHashes);
+        for (Row row : garbage.values()) {
+            if(row.hash == null) bytes += row.filesize;
+            else hashes.add(row.hash);
+            if(row.thumbnailhash != null) hashes.add(row.thumbnailhash);
+        }
+        if(!hashes.isEmpty()) bytes += deleteBlobs(hashes);
+
+        deletedFiles.addAndGet(garbage.size());
+        reclaimedBytes.addAndGet(bytes);
+        runDeletedFiles += garbage.size();
+        runReclaimedBytes += bytes;
+    }
+
+    private long deleteBlobs(Set<String> hashes){
+        hashes.removeAll(namedParameterJdbcTemplate.queryForList(BLOB_REFERENCES_QUERY, new MapSqlParameterSource("hashes", hashes), String.class));
+        Instant cutoff = Instant.now().minus(gracePeriod);
+        long bytes = 0;
+        for (String hash : hashes) {
+            try {
+                if(!blobStore.exists(hash) || blobStore.lastModified(hash).isAfter(cutoff)) continue;
+                long size = blobStore.size(hash);
+                blobStore.delete(hash);
+                bytes += size;
+            } catch (IOException e) {
+                logger.warn("Unable to delete blob " + hash, e);
+            }
+        }
+        return bytes;
+    }
+
+    private static class Row {
+        private final String id;
+        private final boolean isused;
+        private final Timestamp tocreation;
+        private final long filesize;
+        private final String hash;
+        private final String thumbnailhash;
+
+        private Row(String id, boolean isused, Timestamp tocreation, long filesize, String hash, String thumbnailhash){
+            this.id = id;
+            this.isused = isused;
+            this.tocreation = tocreation;
+            this.filesize = filesize;
+            this.hash = hash;
+            this.thumbnailhash = thumbnailhash;
+        }
+    }
+}
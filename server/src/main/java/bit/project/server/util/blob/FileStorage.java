@@ -0,0 +1,305 @@
+package bit.project.server.util.blob;
+
+import bit.project.server.dao.FileDao;
+import bit.project.server.entity.File;
+import bit.project.server.util.exception.BadRequestException;
+import bit.project.server.util.exception.ObjectNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stores the contents of uploaded files and their thumbnails in the {@link BlobStore}; the file table keeps
+ * only their details and hashes. Files uploaded before the blob store keep their contents in the table until
+ * the migration job moves them out.
+ */
+@Component
+public class FileStorage {
+
+    private static final long CACHE_MAX_AGE_SECONDS = 365L*24*60*60;
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final Logger logger = LoggerFactory.getLogger(FileStorage.class);
+
+    private final FileDao fileDao;
+    private final BlobStore blobStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final ThumbnailGenerator thumbnailGenerator;
+    private final int migrationBatchSize;
+    private volatile boolean migrated;
+
+    public FileStorage(FileDao fileDao, BlobStore blobStore, JdbcTemplate jdbcTemplate, ThumbnailGenerator thumbnailGenerator,
+                       @Value("${blob.migration-batch-size:20}") int migrationBatchSize){
+        this.fileDao = fileDao;
+        this.blobStore = blobStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.thumbnailGenerator = thumbnailGenerator;
+        this.migrationBatchSize = migrationBatchSize;
+    }
+
+    /**
+     * Adds the hash columns to file tables created before the blob store, and creates the table of thumbnail sizes.
+     */
+    public void install(){
+        Integer count = jdbcTemplate.queryForObject("select count(*) from information_schema.columns where table_schema=database() and table_name='file' and column_name='hash'", Integer.class);
+        if(count != null && count == 0){
+            jdbcTemplate.execute("alter table file add column hash char(64) null, add column thumbnailhash char(64) null, add index index_file_hash(hash), add index index_file_thumbnailhash(thumbnailhash)");
+        }
+        jdbcTemplate.execute("create table if not exists filethumbnail(file_id char(36) not null, size int not null, hash char(64) not null, mimetype varchar(255) not null, primary key(file_id, size), index index_filethumbnail_hash(hash))");
+    }
+
+    public File save(MultipartFile multipartFile) throws IOException {
+        String mimetype = multipartFile.getContentType();
+        if(mimetype == null) throw new BadRequestException("File type is missing");
+        mimetype = mimetype.toLowerCase();
+
+        String hash;
+        try (InputStream in = multipartFile.getInputStream()) {
+            hash = blobStore.put(in);
+        }
+
+        File file = new File();
+        file.setId(UUID.randomUUID().toString());
+        file.setFilemimetype(mimetype);
+        file.setHash(hash);
+        file.setFilesize(multipartFile.getSize());
+        file.setOriginalname(multipartFile.getOriginalFilename());
+        file.setIsused(false);
+        file.setTocreation(LocalDateTime.now());
+
+        // Thumbnails of images are made in the background; until then the file type icon stands in for them
+        if(mimetype.equals("image/svg+xml")){
+            file.setThumbnailhash(hash);
+            file.setThumbnailmimetype(mimetype);
+        }else if(!ThumbnailGenerator.isImage(mimetype)){
+            file.setThumbnailhash(thumbnailGenerator.getIconHash(mimetype));
+            file.setThumbnailmimetype(thumbnailGenerator.getIconMimetype());
+        }
+
+        fileDao.save(file);
+        if(file.getThumbnailhash() == null) thumbnailGenerator.submit(file);
+        return file;
+    }
+
+    /**
+     * The whole content of the file, for the endpoints that still return files as base64.
+     */
+    public byte[] getBytes(File file) throws IOException {
+        if(file.getHash() == null) return file.getFile();
+        try (InputStream in = blobStore.open(file.getHash())) {
+            return in.readAllBytes();
+        }
+    }
+
+    public void serveFile(File file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(getFileEtag(file.getId()), false, file.getHash(), file.getFile(), file.getFilemimetype(), request, response);
+    }
+
+    /**
+     * Serves the thumbnail of the given size, or the default one when the file has no thumbnail of that size
+     * (icons, svg images and files uploaded before thumbnail sizes). While the thumbnails of an image are
+     * still being made, its file type icon is served without caching.
+     */
+    public void serveThumbnail(File file, int size, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if(file.getThumbnailhash() == null && file.getThumbnail() == null){
+            if(file.getHash() != null && ThumbnailGenerator.isImage(file.getFilemimetype())){
+                byte[] icon = thumbnailGenerator.getIcon(file.getFilemimetype());
+                response.setHeader("Cache-Control", "no-cache");
+                response.setContentType(thumbnailGenerator.getIconMimetype());
+                response.setContentLength(icon.length);
+                if(!request.getMethod().equals("HEAD")) response.getOutputStream().write(icon);
+                return;
+            }
+            throw new ObjectNotFoundException("File not found");
+        }
+
+        if(size != ThumbnailGenerator.DEFAULT_SIZE){
+            List<String[]> thumbnails = jdbcTemplate.query("select hash, mimetype from filethumbnail where file_id=? and size=?",
+                    (rs, rowNum) -> new String[]{rs.getString(1), rs.getString(2)}, file.getId(), size);
+            if(!thumbnails.isEmpty()){
+                serve(getThumbnailEtag(file.getId(), size), true, thumbnails.get(0)[0], null, thumbnails.get(0)[1], request, response);
+                return;
+            }
+        }
+        serve(getThumbnailEtag(file.getId(), size), true, file.getThumbnailhash(), file.getThumbnail(), file.getThumbnailmimetype(), request, response);
+    }
+
+    /**
+     * Moves the contents of files uploaded before the blob store out of the file table, a batch at a time.
+     */
+    @Scheduled(fixedDelayString = "${blob.migration-interval-millis:60000}", initialDelay = 10000)
+    public void migrate(){
+        if(migrated) return;
+        try {
+            int moved;
+            long total = 0;
+            do {
+                moved = migrateBatch();
+                total += moved;
+            } while (moved == migrationBatchSize);
+            if(total > 0) logger.info("Moved " + total + " files to the blob store");
+            migrated = true;
+        } catch (RuntimeException | IOException e) {
+            logger.warn("Unable to move files to the blob store", e);
+        }
+    }
+
+    private int migrateBatch() throws IOException {
+        List<String> ids = jdbcTemplate.queryForList("select id from file where hash is null and file is not null limit ?", String.class, migrationBatchSize);
+        for (String id : ids) {
+            String[] hashes = jdbcTemplate.query("select file, thumbnail from file where id=?", rs -> {
+                if(!rs.next()) return null;
+                try {
+                    return new String[]{ put(rs.getBinaryStream(1)), put(rs.getBinaryStream(2)) };
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, id);
+            if(hashes == null) continue;
+            jdbcTemplate.update("update file set hash=?, thumbnailhash=?, file=null, thumbnail=null where id=? and hash is null", hashes[0], hashes[1], id);
+        }
+        return ids.size();
+    }
+
+    private String put(InputStream in) throws IOException {
+        if(in == null) return null;
+        try (in) {
+            return blobStore.put(in);
+        }
+    }
+
+    /**
+     * Answers a conditional GET for a file with 304 Not Modified. File contents never change for a file id,
+     * so the id is the entity tag and no lookup is needed. Only shared responses may be kept by shared caches.
+     */
+    public boolean isNotModified(String etag, boolean shared, HttpServletRequest request, HttpServletResponse response){
+        if(!matches(request.getHeader("If-None-Match"), etag)) return false;
+        setCacheHeaders(etag, shared, response);
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    public static String getFileEtag(String fileId){
+        return "\"" + fileId + "\"";
+    }
+
+    public static String getThumbnailEtag(String fileId, int size){
+        if(size == ThumbnailGenerator.DEFAULT_SIZE) return "\"" + fileId + "-thumbnail\"";
+        return "\"" + fileId + "-thumbnail-" + size + "\"";
+    }
+
+    /**
+     * Writes a blob, or the single byte range the request asks for, to the response.
+     * Tomcat sends blobs on local disk with sendfile when it supports it; otherwise they are copied with FileChannel.transferTo.
+     */
+    private void serve(String etag, boolean shared, String hash, byte[] legacy, String mimetype, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if(hash == null && legacy == null) throw new ObjectNotFoundException("File not found");
+        if(isNotModified(etag, shared, request, response)) return;
+
+        long size = hash == null ? legacy.length : blobStore.size(hash);
+        setCacheHeaders(etag, shared, response);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setContentType(mimetype);
+
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader("Range");
+        String ifRange = request.getHeader("If-Range");
+        if(range != null && (ifRange == null || ifRange.equals(etag))){
+            long[] bounds = parseRange(range, size);
+            if(bounds == null){
+                response.setHeader("Content-Range", "bytes */" + size);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if(bounds.length == 2){
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if(request.getMethod().equals("HEAD") || length <= 0) return;
+
+        if(hash == null){
+            response.getOutputStream().write(legacy, (int) start, (int) length);
+            return;
+        }
+
+        Path path = blobStore.getLocalPath(hash);
+        if(path != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))){
+            request.setAttribute(SENDFILE_FILENAME, path.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        blobStore.transferTo(hash, start, length, Channels.newChannel(response.getOutputStream()));
+    }
+
+    private static void setCacheHeaders(String etag, boolean shared, HttpServletResponse response){
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", (shared ? "public" : "private") + ", max-age=" + CACHE_MAX_AGE_SECONDS + ", immutable");
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag){
+        if(ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if(tag.startsWith("W/")) tag = tag.substring(2);
+            if(tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The first and last byte of a single byte range, an empty array when the whole content has to be sent
+     * (malformed or multiple ranges), or null when the range cannot be satisfied.
+     */
+    private static long[] parseRange(String range, long size){
+        if(!range.startsWith("bytes=") || range.indexOf(',') >= 0) return new long[0];
+        String spec = range.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if(dash < 0) return new long[0];
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if(first.isEmpty()){
+                if(last.isEmpty()) return new long[0];
+                long suffix = Long.parseLong(last);
+                if(suffix == 0) return null;
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            }else{
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                if(end < start && !last.isEmpty()) return new long[0];
+            }
+            if(start >= size) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package bit.project.server.util.blob;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+
+/**
+ * Blob store on local disk. A blob lives at ab/cd/abcd... under the root directory, named by its SHA-256 hash.
+ * Uploads are streamed to a temporary file while they are hashed and then moved into place.
+ */
+@Component
+@ConditionalOnProperty(name = "blob.store", havingValue = "local", matchIfMissing = true)
+public class LocalBlobStore implements BlobStore {
+
+    private final Path root;
+    private final Path temp;
+
+    public LocalBlobStore(@Value("${blob.directory:blobs}") String directory) throws IOException {
+        root = Paths.get(directory).toAbsolutePath();
+        temp = root.resolve("tmp");
+        Files.createDirectories(temp);
+    }
+
+    @Override
+    public String put(InputStream in) throws IOException {
+        MessageDigest digest = sha256();
+        Path tempFile = Files.createTempFile(temp, "upload", ".tmp");
+        try {
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+                in.transferTo(out);
+            }
+
+            String key = toHex(digest.digest());
+            Path path = resolve(key);
+            // An existing blob is touched, so the collector leaves it alone while the new reference is saved
+            if(!touch(key)){
+                Files.createDirectories(path.getParent());
+                Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return key;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public boolean touch(String key) throws IOException {
+        try {
+            Files.setLastModifiedTime(resolve(key), FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Instant lastModified(String key) throws IOException {
+        return Files.getLastModifiedTime(resolve(key)).toInstant();
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(resolve(key));
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public void transferTo(String key, long position, long count, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            long end = position + count;
+            while (position < end){
+                long transferred = channel.transferTo(position, end - position, target);
+                if(transferred <= 0) break;
+                position += transferred;
+            }
+        }
+    }
+
+    @Override
+    public Path getLocalPath(String key) {
+        return resolve(key);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    private Path resolve(String key){
+        if(key == null || !key.matches("[0-9a-f]{64}")) throw new IllegalArgumentException("Invalid blob key");
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private static MessageDigest sha256(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes){
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return hex.toString();
+    }
+}
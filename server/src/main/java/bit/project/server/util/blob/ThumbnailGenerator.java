@@ -0,0 +1,193 @@
+package bit.project.server.util.blob;
+
+import bit.project.server.entity.File;
+import bit.project.server.util.helper.ImageHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Creates the thumbnails of uploaded images on a bounded pool of worker threads, so uploads return before
+ * the thumbnails are ready. Every image gets one thumbnail per size in {@link #SIZES}; the default size is also
+ * recorded on the file itself. Images are decoded with subsampling, so a worker never holds a full resolution raster.
+ * Files whose thumbnails were not made, because the queue was full or the server stopped, are picked up again
+ * by a periodic scan.
+ */
+@Component
+public class ThumbnailGenerator {
+
+    public static final int[] SIZES = {64, 128, 512};
+    public static final int DEFAULT_SIZE = 128;
+    private static final Set<String> IMAGE_TYPES = Set.of("image/jpg", "image/jpeg", "image/png");
+    private static final String ICON_MIMETYPE = "image/svg+xml";
+    private static final String ICON_LOCATION = "thumbnails/";
+
+    private final Logger logger = LoggerFactory.getLogger(ThumbnailGenerator.class);
+
+    private final BlobStore blobStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Map<String, byte[]> icons = new ConcurrentHashMap<>();
+    private final Map<String, String> iconHashes = new ConcurrentHashMap<>();
+
+    public ThumbnailGenerator(BlobStore blobStore, JdbcTemplate jdbcTemplate,
+                              @Value("${thumbnail.threads:2}") int threads,
+                              @Value("${thumbnail.queue-capacity:100}") int queueCapacity){
+        this.blobStore = blobStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-generator");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static boolean isImage(String mimetype){
+        return IMAGE_TYPES.contains(mimetype);
+    }
+
+    /**
+     * Queues the thumbnails of a saved image file. When the queue is full the file is left to the next scan.
+     */
+    public void submit(File file){
+        if(!pending.add(file.getId())) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(file.getId(), file.getHash(), file.getFilemimetype());
+                } finally {
+                    pending.remove(file.getId());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(file.getId());
+        }
+    }
+
+    /**
+     * The file type icon that stands for a thumbnail, loaded from the classpath once.
+     */
+    public byte[] getIcon(String mimetype){
+        return icons.computeIfAbsent(getIconName(mimetype), name -> {
+            try (InputStream in = new ClassPathResource(ICON_LOCATION + name).getInputStream()) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public String getIconHash(String mimetype) throws IOException {
+        String name = getIconName(mimetype);
+        String hash = iconHashes.get(name);
+        // The blob of an icon goes away when the collector deletes the last file that used it, and is touched so
+        // that it is not deleted before the file that reuses it is saved
+        if(hash == null || !blobStore.touch(hash)){
+            hash = blobStore.put(new ByteArrayInputStream(getIcon(mimetype)));
+            iconHashes.put(name, hash);
+        }
+        return hash;
+    }
+
+    public String getIconMimetype(){
+        return ICON_MIMETYPE;
+    }
+
+    @Scheduled(fixedDelayString = "${thumbnail.scan-interval-millis:60000}", initialDelay = 30000)
+    public void scan(){
+        try {
+            List<File> files = jdbcTemplate.query("select id, hash, filemimetype from file where thumbnailhash is null and hash is not null and tocreation < ? limit ?",
+                    (rs, rowNum) -> {
+                        File file = new File(rs.getString("id"));
+                        file.setHash(rs.getString("hash"));
+                        file.setFilemimetype(rs.getString("filemimetype"));
+                        return file;
+                    },
+                    Timestamp.valueOf(LocalDateTime.now().minusMinutes(1)), executor.getQueue().remainingCapacity());
+            for (File file : files) submit(file);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to scan for missing thumbnails", e);
+        }
+    }
+
+    @PreDestroy
+    public void close(){
+        executor.shutdownNow();
+    }
+
+    private void generate(String fileId, String hash, String mimetype){
+        try {
+            boolean png = mimetype.equals("image/png");
+            String format = png ? "png" : "jpg";
+            String thumbnailMimetype = png ? "image/png" : "image/jpeg";
+
+            BufferedImage image;
+            try (InputStream in = blobStore.open(hash)) {
+                image = ImageHelper.readSubsampled(in, Arrays.stream(SIZES).max().getAsInt());
+            }
+
+            if(image == null){
+                setThumbnail(fileId, getIconHash(mimetype), ICON_MIMETYPE);
+                return;
+            }
+
+            String defaultHash = null;
+            for (int i = SIZES.length - 1; i >= 0; i--) {
+                // Each size is scaled from the next larger one, which is cheaper than scaling from the decoded image
+                image = ImageHelper.scaleToFit(image, SIZES[i], png);
+                String thumbnailHash = blobStore.put(new ByteArrayInputStream(ImageHelper.toBytes(image, format)));
+                jdbcTemplate.update("insert into filethumbnail(file_id, size, hash, mimetype) values(?,?,?,?) on duplicate key update hash=values(hash), mimetype=values(mimetype)",
+                        fileId, SIZES[i], thumbnailHash, thumbnailMimetype);
+                if(SIZES[i] == DEFAULT_SIZE) defaultHash = thumbnailHash;
+            }
+            setThumbnail(fileId, defaultHash, thumbnailMimetype);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to create thumbnails of file " + fileId, e);
+            try {
+                setThumbnail(fileId, getIconHash(mimetype), ICON_MIMETYPE);
+            } catch (IOException | RuntimeException ex) {
+                logger.warn("Unable to set the icon of file " + fileId, ex);
+            }
+        }
+    }
+
+    private void setThumbnail(String fileId, String hash, String mimetype){
+        jdbcTemplate.update("update file set thumbnailhash=?, thumbnailmimetype=? where id=?", hash, mimetype, fileId);
+    }
+
+    private static String getIconName(String mimetype){
+        switch (mimetype == null ? "" : mimetype){
+            case "application/pdf" :
+                return "pdf.svg";
+            case "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet" :
+            case "application/vnd.ms-excel" :
+                return "xls.svg";
+            case "application/vnd.openxmlformats-officedocument.presentationml.presentation" :
+                return "ppt.svg";
+            case "application/vnd.openxmlformats-officedocument.wordprocessingml.document" :
+            case "application/msword" :
+                return "doc.svg";
+            default:
+                return "file.svg";
+        }
+    }
+}
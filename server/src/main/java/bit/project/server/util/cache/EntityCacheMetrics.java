@@ -0,0 +1,33 @@
+package bit.project.server.util.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Hit ratio of every second-level cache region, as the hibernate.second.level.cache.hit.ratio gauge tagged
+ * with the region. The raw hit, miss and put counts are exported by the actuator's Hibernate metrics.
+ */
+@Component
+public class EntityCacheMetrics {
+
+    public EntityCacheMetrics(EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry){
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            Gauge.builder("hibernate.second.level.cache.hit.ratio", statistics, s -> getHitRatio(s.getDomainDataRegionStatistics(region)))
+                    .tag("region", region)
+                    .register(meterRegistry);
+        }
+    }
+
+    private static double getHitRatio(CacheRegionStatistics region){
+        if(region == null) return Double.NaN;
+        long requests = region.getHitCount() + region.getMissCount();
+        return requests == 0 ? Double.NaN : (double) region.getHitCount() / requests;
+    }
+}
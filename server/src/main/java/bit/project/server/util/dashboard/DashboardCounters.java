@@ -0,0 +1,225 @@
+package bit.project.server.util.dashboard;
+
+import bit.project.server.UsecaseList;
+import bit.project.server.util.dto.DashboardSummary;
+import bit.project.server.util.security.UserPrincipal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Rolling counts of recently created customers, purchases, items and sales, and sale revenue, kept in memory
+ * in hourly buckets for the last eight days. The buckets are loaded with one grouped query per table on first use
+ * and after {@link #invalidate()}, and are kept current by {@link #created(Kpi, LocalDateTime, BigDecimal)}.
+ * They are reloaded periodically as well, which corrects the counts for changes made on other nodes.
+ * Open dashboards get the summary pushed over server-sent events, at most once per push interval.
+ */
+@Component
+public class DashboardCounters {
+
+    public enum Kpi{
+        CUSTOMER("customer", UsecaseList.SHOW_ALL_CUSTOMERS),
+        PURCHASE("purchase", UsecaseList.SHOW_ALL_PURCHASES),
+        ITEM("item", UsecaseList.SHOW_ALL_ITEMS),
+        SALE("sale", UsecaseList.SHOW_ALL_SALES);
+
+        private final String table;
+        public final UsecaseList usecase;
+
+        Kpi(String table, UsecaseList usecase){
+            this.table = table;
+            this.usecase = usecase;
+        }
+    }
+
+    private static final int BUCKET_COUNT = 8*24;
+    private static final int RECENT_HOURS = 7*24;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long streamTimeoutMillis;
+    private final Map<Kpi, Buckets> buckets = new EnumMap<>(Kpi.class);
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private boolean loaded;
+    private long version;
+    private long pushedVersion;
+
+    public DashboardCounters(JdbcTemplate jdbcTemplate,
+                             @Value("${dashboard.stream-timeout-millis:1800000}") long streamTimeoutMillis){
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamTimeoutMillis = streamTimeoutMillis;
+    }
+
+    /**
+     * Counts an entity created at the given time. For sales, amount is the total; it can also be called
+     * with a count of zero and the difference of the total when a sale is updated.
+     */
+    public synchronized void created(Kpi kpi, LocalDateTime tocreation, BigDecimal amount){
+        changed(kpi, tocreation, 1, amount);
+    }
+
+    public synchronized void changed(Kpi kpi, LocalDateTime tocreation, int count, BigDecimal amount){
+        if(!loaded) return;
+        buckets.get(kpi).add(toHour(tocreation), count, amount);
+        version++;
+    }
+
+    /**
+     * Drops the counts, e.g. after entities were deleted, so they are reloaded on next use.
+     */
+    public synchronized void invalidate(){
+        loaded = false;
+        version++;
+    }
+
+    /**
+     * The summary with the figures the principal is allowed to see; the others are null.
+     */
+    public synchronized DashboardSummary getSummary(UserPrincipal principal){
+        load();
+        long now = toHour(LocalDateTime.now());
+        long recent = now - RECENT_HOURS + 1;
+        LocalDate today = LocalDate.now();
+        long startOfDay = toHour(today.atStartOfDay());
+        long startOfWeek = toHour(today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay());
+
+        DashboardSummary summary = new DashboardSummary();
+        if(principal.hasPrivilege(Kpi.CUSTOMER.usecase)) summary.setRecentCustomerCount(buckets.get(Kpi.CUSTOMER).count(recent));
+        if(principal.hasPrivilege(Kpi.PURCHASE.usecase)) summary.setRecentPurchaseCount(buckets.get(Kpi.PURCHASE).count(recent));
+        if(principal.hasPrivilege(Kpi.ITEM.usecase)) summary.setRecentItemCount(buckets.get(Kpi.ITEM).count(recent));
+        if(principal.hasPrivilege(Kpi.SALE.usecase)){
+            Buckets sales = buckets.get(Kpi.SALE);
+            summary.setRecentSaleCount(sales.count(recent));
+            summary.setRevenueToday(sales.amount(startOfDay));
+            summary.setRevenueThisWeek(sales.amount(startOfWeek));
+        }
+        return summary;
+    }
+
+    /**
+     * Opens a stream that starts with the current summary and carries a "summary" event whenever it changes.
+     */
+    public SseEmitter subscribe(UserPrincipal principal){
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, principal);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        send(subscriber, getSummary(principal));
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${dashboard.push-interval-millis:2000}")
+    public void push(){
+        long current;
+        synchronized (this){
+            current = version;
+        }
+        if(current == pushedVersion) return;
+        pushedVersion = current;
+        for (Subscriber subscriber : subscribers) send(subscriber, getSummary(subscriber.principal));
+    }
+
+    @Scheduled(fixedDelayString = "${dashboard.heartbeat-interval-millis:30000}")
+    public void heartbeat(){
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${dashboard.reload-interval-millis:3600000}", initialDelayString = "${dashboard.reload-interval-millis:3600000}")
+    public void reload(){
+        invalidate();
+    }
+
+    private void load(){
+        if(loaded) return;
+        LocalDateTime from = LocalDateTime.now().minusHours(BUCKET_COUNT - 1).withMinute(0).withSecond(0).withNano(0);
+        for (Kpi kpi : Kpi.values()) {
+            Buckets kpiBuckets = new Buckets();
+            String amount = kpi == Kpi.SALE ? "sum(total)" : "0";
+            jdbcTemplate.query("select date_format(tocreation, '%Y-%m-%d %H:00:00') hour, count(*) count, " + amount + " amount from " + kpi.table + " where tocreation >= ? group by hour",
+                    rs -> {
+                        kpiBuckets.add(toHour(Timestamp.valueOf(rs.getString("hour")).toLocalDateTime()), rs.getInt("count"), rs.getBigDecimal("amount"));
+                    },
+                    Timestamp.valueOf(from));
+            buckets.put(kpi, kpiBuckets);
+        }
+        loaded = true;
+    }
+
+    private void send(Subscriber subscriber, DashboardSummary summary){
+        try {
+            subscriber.emitter.send(SseEmitter.event().name("summary").data(summary, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    private static long toHour(LocalDateTime dateTime){
+        return dateTime.toEpochSecond(ZoneOffset.UTC) / 3600;
+    }
+
+    /**
+     * Ring of hourly counts and amounts; a slot is reused once its hour is more than {@link #BUCKET_COUNT} hours old.
+     */
+    private static class Buckets {
+        private final long[] hours = new long[BUCKET_COUNT];
+        private final long[] counts = new long[BUCKET_COUNT];
+        private final BigDecimal[] amounts = new BigDecimal[BUCKET_COUNT];
+
+        private void add(long hour, long count, BigDecimal amount){
+            int slot = (int) Math.floorMod(hour, (long) BUCKET_COUNT);
+            if(hours[slot] != hour){
+                if(hours[slot] > hour) return;
+                hours[slot] = hour;
+                counts[slot] = 0;
+                amounts[slot] = BigDecimal.ZERO;
+            }
+            counts[slot] += count;
+            if(amount != null) amounts[slot] = amounts[slot].add(amount);
+        }
+
+        private long count(long fromHour){
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) if(hours[i] >= fromHour) count += counts[i];
+            return count;
+        }
+
+        private BigDecimal amount(long fromHour){
+            BigDecimal amount = BigDecimal.ZERO;
+            for (int i = 0; i < BUCKET_COUNT; i++) if(hours[i] >= fromHour) amount = amount.add(amounts[i]);
+            return amount;
+        }
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final UserPrincipal principal;
+
+        private Subscriber(SseEmitter emitter, UserPrincipal principal){
+            this.emitter = emitter;
+            this.principal = principal;
+        }
+    }
+}
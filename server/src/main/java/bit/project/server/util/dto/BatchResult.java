@@ -0,0 +1,20 @@
+package bit.project.server.util.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult{
+    private Integer index;
+    private Integer status;
+    private Object id;
+    private String link;
+    private Object errors;
+
+    public BatchResult(Integer index){
+        this.index = index;
+    }
+}
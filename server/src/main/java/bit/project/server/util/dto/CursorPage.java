@@ -0,0 +1,26 @@
+package bit.project.server.util.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Getter
+@Setter
+public class CursorPage<T>{
+    private List<T> content;
+    private Integer size;
+    private String next;
+
+    public CursorPage(List<T> content, Integer size, String next){
+        this.content = content;
+        this.size = size;
+        this.next = next;
+    }
+
+    public <R> CursorPage<R> map(Function<T, R> mapper){
+        return new CursorPage<>(content.stream().map(mapper).collect(Collectors.toList()), size, next);
+    }
+}
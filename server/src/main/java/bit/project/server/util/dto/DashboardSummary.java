@@ -0,0 +1,17 @@
+package bit.project.server.util.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+public class DashboardSummary {
+    private Long recentCustomerCount;
+    private Long recentPurchaseCount;
+    private Long recentItemCount;
+    private Long recentSaleCount;
+    private BigDecimal revenueToday;
+    private BigDecimal revenueThisWeek;
+}
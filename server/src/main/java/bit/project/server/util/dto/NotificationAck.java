@@ -0,0 +1,14 @@
+package bit.project.server.util.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Setter
+@Getter
+public class NotificationAck{
+    private List<String> ids;
+    private LocalDateTime before;
+}
@@ -10,6 +10,7 @@ public class PageQuery {
     private Integer page;
     private Integer size;
     private HashMap<String,String> query;
+    private String cursor;
 
     public PageQuery(){
         page = 0;
@@ -43,6 +44,15 @@ public class PageQuery {
         }catch (Exception ignored){}
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursorParam) {
+        if(cursorParam==null) return;
+        this.cursor = cursorParam.trim();
+    }
+
     public void setQuery(String queryParam) {
         if(queryParam == null) return;
         queryParam = queryParam.trim();
@@ -0,0 +1,35 @@
+package bit.project.server.util.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+public class PricedBasket {
+    private BigDecimal subtotal;
+    private BigDecimal discount;
+    private BigDecimal total;
+    private List<Line> lines = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Line {
+        private Integer item;
+        private Integer qty;
+        private BigDecimal unitprice;
+        private BigDecimal discount;
+        private BigDecimal total;
+
+        public Line(Integer item, Integer qty, BigDecimal unitprice, BigDecimal discount, BigDecimal total){
+            this.item = item;
+            this.qty = qty;
+            this.unitprice = unitprice;
+            this.discount = discount;
+            this.total = total;
+        }
+    }
+}
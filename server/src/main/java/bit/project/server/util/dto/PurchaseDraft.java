@@ -0,0 +1,27 @@
+package bit.project.server.util.dto;
+
+import bit.project.server.entity.Purchaseitem;
+import bit.project.server.entity.Supplier;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+public class PurchaseDraft {
+    private Integer id;
+    private Supplier supplier;
+    private LocalDateTime tocreation;
+    private BigDecimal total;
+    private List<Purchaseitem> purchaseitemList = new ArrayList<>();
+
+    public PurchaseDraft(Integer id, Supplier supplier, LocalDateTime tocreation){
+        this.id = id;
+        this.supplier = supplier;
+        this.tocreation = tocreation;
+    }
+}
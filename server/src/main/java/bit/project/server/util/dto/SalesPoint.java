@@ -0,0 +1,21 @@
+package bit.project.server.util.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Getter
+@Setter
+public class SalesPoint {
+    private LocalDate date;
+    private Long qty;
+    private BigDecimal revenue;
+
+    public SalesPoint(LocalDate date, Long qty, BigDecimal revenue){
+        this.date = date;
+        this.qty = qty;
+        this.revenue = revenue;
+    }
+}
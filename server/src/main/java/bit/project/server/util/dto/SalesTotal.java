@@ -0,0 +1,20 @@
+package bit.project.server.util.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+public class SalesTotal {
+    private Integer id;
+    private Long qty;
+    private BigDecimal revenue;
+
+    public SalesTotal(Integer id, Long qty, BigDecimal revenue){
+        this.id = id;
+        this.qty = qty;
+        this.revenue = revenue;
+    }
+}
@@ -0,0 +1,24 @@
+package bit.project.server.util.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class SearchHit{
+    private String type;
+    private Integer id;
+    private String code;
+    private String title;
+    private String link;
+    private Float score;
+
+    public SearchHit(String type, Integer id, String code, String title, String link, Float score){
+        this.type = type;
+        this.id = id;
+        this.code = code;
+        this.title = title;
+        this.link = link;
+        this.score = score;
+    }
+}
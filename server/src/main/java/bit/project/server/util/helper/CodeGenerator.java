@@ -1,55 +1,124 @@
 package bit.project.server.util.helper;
 
 import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.persistence.EntityManager;
-import javax.persistence.Query;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates document codes from the codesequence table using hi/lo allocation.
+ * Each node reserves a block of numbers per table and year in a short transaction of its own and hands them out
+ * from memory, so codes are unique across nodes without scanning the document tables or retrying inserts.
+ * Numbers of a block that is not used up before a restart are skipped.
+ */
 @Component
 public class CodeGenerator {
 
-    private EntityManager em;
-    private DateFormat dateFormat = new SimpleDateFormat("yy");
-
-    public CodeGenerator(EntityManager em){
-        this.em = em;
+    private static final String NO_PERIOD = "";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int blockSize;
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+    private final DateFormat dateFormat = new SimpleDateFormat("yy");
+    private volatile boolean tableCreated;
+
+    public CodeGenerator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         @Value("${codegenerator.block-size:20}") int blockSize){
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = blockSize;
     }
 
     public String getNextId(CodeGeneratorConfig config){
+        String period = getPeriod(config);
 
-        int prefixLength = config.prefix.length();
-        int numericLength = config.length - prefixLength;
+        return format(config, period, next(config, period));
+    }
 
-        String queryText = "select max(substr("+config.columnName+","+(prefixLength+1)+","+numericLength+")) as c from "+config.tableName;
-        Query query = em.createNativeQuery(queryText);
-        String c = (String) query.getSingleResult();
+    /**
+     * Reserves a dedicated block for the given number of codes, e.g. for a batch of documents.
+     */
+    public List<String> getNextIds(CodeGeneratorConfig config, int count){
+        List<String> codes = new ArrayList<>(count);
+        if(count <= 0) return codes;
+
+        String period = getPeriod(config);
+        long first = allocate(config, period, count);
+        for (long i = first; i < first + count; i++) codes.add(format(config, period, i));
+        return codes;
+    }
 
-        if(!config.yearlyRenew){
-            if(c == null){
-                return config.prefix + String.format("%0"+numericLength+"d", 1);
-            }else{
-                return config.prefix + String.format("%0"+numericLength+"d", Integer.parseInt(c)+1);
-            }
+    private String getPeriod(CodeGeneratorConfig config){
+        if(!config.yearlyRenew) return NO_PERIOD;
+        synchronized (dateFormat){
+            return dateFormat.format(Calendar.getInstance().getTime());
         }
+    }
 
-        numericLength -= 2;
+    private String format(CodeGeneratorConfig config, String period, long number){
+        int numericLength = config.length - config.prefix.length() - period.length();
+        return config.prefix + period + String.format("%0"+numericLength+"d", number);
+    }
 
-        String currentYear = dateFormat.format(Calendar.getInstance().getTime());
+    private long next(CodeGeneratorConfig config, String period){
+        Block block = blocks.computeIfAbsent(config.tableName + ":" + period, key -> new Block());
+        synchronized (block){
+            if(block.next >= block.limit){
+                block.next = allocate(config, period, blockSize);
+                block.limit = block.next + blockSize;
+            }
+            return block.next++;
+        }
+    }
 
-        if(c == null) return config.prefix + currentYear + String.format("%0"+numericLength+"d", 1);
+    /**
+     * Reserves the next block of the given size for the table and period and returns its first number.
+     * The sequence row is created on first use, continuing from the highest code already stored in the table.
+     */
+    private long allocate(CodeGeneratorConfig config, String period, int size){
+        Long first = transactionTemplate.execute(status -> {
+            createTable();
+            List<Long> values = jdbcTemplate.queryForList("select nextvalue from codesequence where name=? and period=? for update", Long.class, config.tableName, period);
+            if(values.isEmpty()){
+                jdbcTemplate.update("insert ignore into codesequence(name, period, nextvalue) values(?,?,?)", config.tableName, period, getMaxExistingNumber(config, period) + 1);
+                values = jdbcTemplate.queryForList("select nextvalue from codesequence where name=? and period=? for update", Long.class, config.tableName, period);
+            }
+            long value = values.get(0);
+            jdbcTemplate.update("update codesequence set nextvalue=? where name=? and period=?", value + size, config.tableName, period);
+            return value;
+        });
+        return first;
+    }
 
-        String maxIdYear = c.substring(0,2);
-        Integer numericSegment = Integer.parseInt(c.substring(2));
+    private long getMaxExistingNumber(CodeGeneratorConfig config, String period){
+        String codePrefix = config.prefix + period;
+        String queryText = "select max(substr("+config.columnName+","+(codePrefix.length()+1)+")) from "+config.tableName+" where "+config.columnName+" like ?";
+        String c = jdbcTemplate.queryForObject(queryText, String.class, codePrefix + "%");
+        return c == null ? 0 : Long.parseLong(c);
+    }
 
-        if(currentYear.equals(maxIdYear)){
-            return config.prefix + currentYear + String.format("%0"+numericLength+"d", numericSegment+1);
-        }
+    private void createTable(){
+        if(tableCreated) return;
+        jdbcTemplate.execute("create table if not exists codesequence(name varchar(64) not null, period char(2) not null, nextvalue bigint not null, primary key(name, period))");
+        tableCreated = true;
+    }
 
-        return config.prefix + currentYear + String.format("%0"+numericLength+"d", 1);
+    private static class Block{
+        private long next;
+        private long limit;
     }
 
     @Data
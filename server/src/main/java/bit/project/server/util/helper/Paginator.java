@@ -0,0 +1,114 @@
+package bit.project.server.util.helper;
+
+import bit.project.server.util.dto.CursorPage;
+import bit.project.server.util.dto.PageQuery;
+import bit.project.server.util.exception.BadRequestException;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+@Component
+public class Paginator {
+
+    private final EntityManager em;
+    private final int maxPageSize;
+
+    public Paginator(EntityManager em, @Value("${pagination.max-page-size:500}") int maxPageSize){
+        this.em = em;
+        this.maxPageSize = maxPageSize;
+    }
+
+    public int getSize(PageQuery pageQuery){
+        return Math.min(pageQuery.getSize(), maxPageSize);
+    }
+
+    public PageRequest getPageRequest(PageQuery pageQuery, Sort sort){
+        return PageRequest.of(pageQuery.getPage(), getSize(pageQuery), sort);
+    }
+
+    /**
+     * Keyset pagination over (tocreation, id) in descending order. Reads one extra row to know whether a next
+     * page exists instead of running a count query.
+     */
+    public <T> CursorPage<T> getCursorPage(Class<T> type, Specification<T> specification, PageQuery pageQuery){
+        return getCursorPage(type, specification, pageQuery, null);
+    }
+
+    /**
+     * As {@link #getCursorPage(Class, Specification, PageQuery)}, loading the rows with the named entity graph,
+     * so the associations a list shows come in the same query.
+     */
+    public <T> CursorPage<T> getCursorPage(Class<T> type, Specification<T> specification, PageQuery pageQuery, String entityGraph){
+        int size = getSize(pageQuery);
+
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<T> criteriaQuery = cb.createQuery(type);
+        Root<T> root = criteriaQuery.from(type);
+        Path<LocalDateTime> tocreation = root.get("tocreation");
+        Path<Integer> id = root.get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        if(specification != null) predicates.add(specification.toPredicate(root, criteriaQuery, cb));
+
+        String cursor = pageQuery.getCursor();
+        if(cursor != null && !cursor.isEmpty()){
+            CursorPosition position = CursorPosition.decode(cursor);
+            predicates.add(cb.or(
+                    cb.lessThan(tocreation, position.tocreation),
+                    cb.and(cb.equal(tocreation, position.tocreation), cb.lessThan(id, position.id))
+            ));
+        }
+
+        criteriaQuery.select(root)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(cb.desc(tocreation), cb.desc(id));
+
+        TypedQuery<T> query = em.createQuery(criteriaQuery).setMaxResults(size + 1);
+        if(entityGraph != null) query.setHint("javax.persistence.fetchgraph", em.getEntityGraph(entityGraph));
+        List<T> rows = query.getResultList();
+
+        if(rows.size() <= size) return new CursorPage<>(rows, size, null);
+
+        List<T> content = rows.subList(0, size);
+        BeanWrapperImpl last = new BeanWrapperImpl(content.get(size - 1));
+        String next = new CursorPosition((LocalDateTime) last.getPropertyValue("tocreation"), (Integer) last.getPropertyValue("id")).encode();
+        return new CursorPage<>(content, size, next);
+    }
+
+    private static class CursorPosition{
+        private final LocalDateTime tocreation;
+        private final Integer id;
+
+        private CursorPosition(LocalDateTime tocreation, Integer id){
+            this.tocreation = tocreation;
+            this.id = id;
+        }
+
+        private String encode(){
+            String text = tocreation + "," + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static CursorPosition decode(String cursor){
+            try{
+                String text = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] segments = text.split(",");
+                return new CursorPosition(LocalDateTime.parse(segments[0]), Integer.valueOf(segments[1]));
+            }catch (Exception e){
+                throw new BadRequestException("Cursor is not well-formed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package bit.project.server.util.install;
+
+import bit.project.server.util.blob.FileStorage;
+import bit.project.server.util.outbox.Outbox;
+import bit.project.server.util.pricing.PricingEngine;
+import bit.project.server.util.security.ServicelogWriter;
+import bit.project.server.util.stock.ReorderEngine;
+import bit.project.server.util.stock.SalesVelocity;
+import bit.project.server.util.stock.StockLedger;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Brings an existing database up to the tables, columns and trigger removals declared in database.sql, and loads
+ * the state the components keep in memory.
+ * Runs once every bean is created but before the context is refreshed, so before the web server takes requests
+ * and the scheduled jobs start; otherwise the stock triggers would still subtract the sales the ledger records,
+ * and a fresh database would be missing tables the first requests and jobs use.
+ */
+@Component
+@ConditionalOnProperty(name = "schema.install", havingValue = "true", matchIfMissing = true)
+public class SchemaInstaller implements SmartInitializingSingleton {
+
+    private final ServicelogWriter servicelogWriter;
+    private final StockLedger stockLedger;
+    private final FileStorage fileStorage;
+    private final Outbox outbox;
+    private final PricingEngine pricingEngine;
+    private final SalesVelocity salesVelocity;
+    private final ReorderEngine reorderEngine;
+
+    public SchemaInstaller(ServicelogWriter servicelogWriter, StockLedger stockLedger, FileStorage fileStorage,
+                           Outbox outbox, PricingEngine pricingEngine, SalesVelocity salesVelocity,
+                           ReorderEngine reorderEngine){
+        this.servicelogWriter = servicelogWriter;
+        this.stockLedger = stockLedger;
+        this.fileStorage = fileStorage;
+        this.outbox = outbox;
+        this.pricingEngine = pricingEngine;
+        this.salesVelocity = salesVelocity;
+        this.reorderEngine = reorderEngine;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated(){
+        servicelogWriter.install();
+        stockLedger.install();
+        fileStorage.install();
+        outbox.install();
+        pricingEngine.install();
+        try {
+            // Before the reorder engine, which reads the reorder points it writes
+            salesVelocity.install();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        reorderEngine.install();
+    }
+}
@@ -0,0 +1,117 @@
+package bit.project.server.util.jpasupplement;
+
+import bit.project.server.util.dto.PageQuery;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates PageQuery search params into criteria predicates so that filtering runs inside the database.
+ * Attribute paths may navigate many-to-one associations with dots, e.g. "category.id".
+ */
+public class SearchSpecification<T> implements Specification<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final char ESCAPE_CHAR = '\\';
+
+    private final PageQuery pageQuery;
+    private final List<Specification<T>> restrictions = new ArrayList<>();
+
+    public SearchSpecification(PageQuery pageQuery){
+        this.pageQuery = pageQuery;
+    }
+
+    public SearchSpecification<T> contains(String param){
+        return contains(param, param);
+    }
+
+    public SearchSpecification<T> contains(String param, String attributePath){
+        String value = pageQuery.getSearchParam(param);
+        if(value == null) return this;
+        String pattern = toContainsPattern(value);
+        restrictions.add((root, query, cb) -> cb.like(cb.lower(getPath(root, attributePath).as(String.class)), pattern, ESCAPE_CHAR));
+        return this;
+    }
+
+    public SearchSpecification<T> equal(String param, String attributePath){
+        Integer value = pageQuery.getSearchParamAsInteger(param);
+        if(value == null) return this;
+        restrictions.add((root, query, cb) -> cb.equal(getPath(root, attributePath), value));
+        return this;
+    }
+
+    public SearchSpecification<T> equalIgnoreCase(String param, String attributePath){
+        String value = pageQuery.getSearchParam(param);
+        if(value == null) return this;
+        restrictions.add((root, query, cb) -> cb.equal(cb.lower(getPath(root, attributePath)), value.toLowerCase()));
+        return this;
+    }
+
+    /**
+     * Matches a date column against a partial ISO date ("2022", "2022-11", "2022-11-03") using an index friendly range.
+     * Any other fragment falls back to a substring match on the formatted date, as the old in-memory filter did.
+     */
+    public SearchSpecification<T> date(String param, String attributePath){
+        String value = pageQuery.getSearchParam(param);
+        if(value == null) return this;
+
+        LocalDate[] range = toDateRange(value.trim());
+        if(range == null) return contains(param, attributePath);
+
+        restrictions.add((root, query, cb) -> cb.between(getPath(root, attributePath), range[0], range[1]));
+        return this;
+    }
+
+    public SearchSpecification<T> and(Specification<T> restriction){
+        restrictions.add(restriction);
+        return this;
+    }
+
+    @Override
+    public Predicate toPredicate(Root<T> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+        Predicate[] predicates = new Predicate[restrictions.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = restrictions.get(i).toPredicate(root, query, cb);
+        }
+        return cb.and(predicates);
+    }
+
+    // The attribute type is only known to the caller, who binds X to the type of the value it compares the path with
+    @SuppressWarnings("unchecked")
+    public static <X> Path<X> getPath(Root<?> root, String attributePath){
+        Path<?> path = root;
+        for (String attribute : attributePath.split("\\.")) path = path.get(attribute);
+        return (Path<X>) path;
+    }
+
+    public static String toContainsPattern(String value){
+        String escaped = value.toLowerCase().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    private static LocalDate[] toDateRange(String value){
+        try{
+            if(value.matches("\\d{4}")){
+                int year = Integer.parseInt(value);
+                return new LocalDate[]{LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31)};
+            }
+            if(value.matches("\\d{4}-\\d{2}")){
+                YearMonth yearMonth = YearMonth.parse(value);
+                return new LocalDate[]{yearMonth.atDay(1), yearMonth.atEndOfMonth()};
+            }
+            if(value.matches("\\d{4}-\\d{2}-\\d{2}")){
+                LocalDate date = LocalDate.parse(value);
+                return new LocalDate[]{date, date};
+            }
+            return null;
+        }catch (DateTimeParseException e){
+            return null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package bit.project.server.util.notification;
+
+import bit.project.server.dao.NotificationDao;
+import bit.project.server.entity.Notification;
+import bit.project.server.entity.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Per-user unread counters and latest notifications kept in memory, and the server-sent event streams
+ * that push them to open clients.
+ * A user's state is loaded from the database once, on first use, and is kept current by {@link #published(Collection)}
+ * and {@link #read(Notification)}, so reading the count or the latest notifications and idle streams cost no queries.
+ * The state is per node; every change to notifications has to go through this hub.
+ */
+@Component
+public class NotificationHub {
+
+    public static final int LATEST_SIZE = 4;
+    private static final Sort LATEST_SORT = Sort.by(Sort.Direction.DESC, "dosend");
+
+    private final NotificationDao notificationDao;
+    private final long streamTimeoutMillis;
+    private final Map<Integer, Channel> channels = new ConcurrentHashMap<>();
+
+    public NotificationHub(NotificationDao notificationDao,
+                           @Value("${notification.stream-timeout-millis:1800000}") long streamTimeoutMillis){
+        this.notificationDao = notificationDao;
+        this.streamTimeoutMillis = streamTimeoutMillis;
+    }
+
+    /**
+     * Opens a stream for the user. It starts with the current unread count and latest notifications,
+     * then carries an "unread" event whenever the count changes and a "notification" event for every new notification.
+     */
+    public SseEmitter subscribe(User user){
+        Channel channel = getChannel(user.getId());
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        emitter.onCompletion(() -> channel.emitters.remove(emitter));
+        emitter.onTimeout(() -> channel.emitters.remove(emitter));
+        emitter.onError(e -> channel.emitters.remove(emitter));
+        channel.emitters.add(emitter);
+
+        synchronized (channel){
+            channel.load(user);
+            send(channel, emitter, "latest", new ArrayList<>(channel.latest));
+            send(channel, emitter, "unread", Map.of("count", channel.unread));
+        }
+        return emitter;
+    }
+
+    public long getUnreadCount(User user){
+        Channel channel = getChannel(user.getId());
+        synchronized (channel){
+            channel.load(user);
+            return channel.unread;
+        }
+    }
+
+    public List<Notification> getLatest(User user){
+        Channel channel = getChannel(user.getId());
+        synchronized (channel){
+            channel.load(user);
+            return new ArrayList<>(channel.latest);
+        }
+    }
+
+    /**
+     * Counts and pushes notifications that were committed to the database.
+     */
+    public void published(Collection<Notification> notifications){
+        for (Notification notification : notifications) {
+            Channel channel = channels.get(notification.getUser().getId());
+            if(channel == null) continue;
+            synchronized (channel){
+                if(!channel.loaded || contains(channel.latest, notification)) continue;
+                channel.unread++;
+                channel.latest.addFirst(notification);
+                if(channel.latest.size() > LATEST_SIZE) channel.latest.removeLast();
+                for (SseEmitter emitter : channel.emitters) {
+                    send(channel, emitter, "notification", notification);
+                    send(channel, emitter, "unread", Map.of("count", channel.unread));
+                }
+            }
+        }
+    }
+
+    public void published(Notification notification){
+        published(Collections.singletonList(notification));
+    }
+
+    /**
+     * Records that an unread notification was marked read.
+     */
+    public void read(Notification notification){
+        read(notification.getUser(), 1, n -> n.getId().equals(notification.getId()), notification.getDoread());
+    }
+
+    /**
+     * Records that count unread notifications of the user, those matching the filter, were marked read.
+     */
+    public void read(User user, int count, Predicate<Notification> filter, LocalDateTime doread){
+        Channel channel = channels.get(user.getId());
+        if(channel == null || count == 0) return;
+        synchronized (channel){
+            if(!channel.loaded) return;
+            channel.unread = Math.max(0, channel.unread - count);
+            for (Notification latest : channel.latest) {
+                if(latest.getDoread() == null && filter.test(latest)) latest.setDoread(doread);
+            }
+            for (SseEmitter emitter : channel.emitters) send(channel, emitter, "unread", Map.of("count", channel.unread));
+        }
+    }
+
+    /**
+     * Keeps idle streams open through proxies and drops the ones whose clients went away.
+     */
+    @Scheduled(fixedDelayString = "${notification.heartbeat-interval-millis:30000}")
+    public void heartbeat(){
+        for (Channel channel : channels.values()) {
+            for (SseEmitter emitter : channel.emitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    channel.emitters.remove(emitter);
+                }
+            }
+        }
+    }
+
+    private Channel getChannel(Integer userId){
+        return channels.computeIfAbsent(userId, id -> new Channel());
+    }
+
+    private static boolean contains(Deque<Notification> notifications, Notification notification){
+        for (Notification n : notifications) if(n.getId().equals(notification.getId())) return true;
+        return false;
+    }
+
+    private void send(Channel channel, SseEmitter emitter, String name, Object data){
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            channel.emitters.remove(emitter);
+        }
+    }
+
+    private class Channel {
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private final Deque<Notification> latest = new ArrayDeque<>();
+        private long unread;
+        private boolean loaded;
+
+        private void load(User user){
+            if(loaded) return;
+            unread = notificationDao.countByUserAndDoread(user, null);
+            latest.addAll(notificationDao.findAllByUser(user, PageRequest.of(0, LATEST_SIZE, LATEST_SORT)).getContent());
+            loaded = true;
+        }
+    }
+}
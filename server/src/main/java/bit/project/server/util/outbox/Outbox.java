@@ -0,0 +1,150 @@
+package bit.project.server.util.outbox;
+
+import bit.project.server.entity.Notification;
+import bit.project.server.entity.User;
+import bit.project.server.util.notification.NotificationHub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Transactional outbox for domain events that notify users.
+ * Events are written to the outboxevent table in the transaction of the change they describe, so they are
+ * never lost or sent for a change that rolled back. A background job turns pending events into notifications,
+ * resolving the recipients of a whole batch with one query and inserting the notifications in a JDBC batch.
+ * Committed notifications are pushed to open clients through the {@link NotificationHub}.
+ */
+@Component
+public class Outbox {
+
+    public enum EventType{
+        SALE_ADDED(1),
+        PURCHASE_ADDED(1),
+        PURCHASES_DRAFTED(1);
+
+        public final int designationId;
+
+        EventType(int designationId){
+            this.designationId = designationId;
+        }
+    }
+
+    private static final String INSERT_NOTIFICATION_QUERY = "insert into notification(id,dosend,message,user_id) values(?,?,?,?)";
+
+    private final Logger logger = LoggerFactory.getLogger(Outbox.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationHub notificationHub;
+    private final int batchSize;
+
+    public Outbox(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, NotificationHub notificationHub,
+                  @Value("${outbox.batch-size:100}") int batchSize){
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.notificationHub = notificationHub;
+        this.batchSize = batchSize;
+    }
+
+    public void install(){
+        jdbcTemplate.execute("create table if not exists outboxevent(id bigint not null auto_increment primary key, type varchar(40) not null, reference varchar(20) null, message text not null, tocreation datetime not null, todispatched datetime null, index index_outboxevent_todispatched(todispatched, id))");
+    }
+
+    /**
+     * Records an event. Has to be called inside the transaction of the change, e.g. from a persist function
+     * passed to the stock ledger, which makes the event commit or roll back with it.
+     */
+    public void publish(EventType type, String reference, String message){
+        jdbcTemplate.update("insert into outboxevent(type, reference, message, tocreation) values(?,?,?,?)",
+                type.name(), reference, message, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.dispatch-interval-millis:1000}")
+    public void dispatch(){
+        try {
+            int dispatched;
+            do {
+                List<Notification> notifications = new ArrayList<>();
+                dispatched = transactionTemplate.execute(status -> dispatchBatch(notifications));
+                notificationHub.published(notifications);
+            } while (dispatched == batchSize);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to dispatch outbox events", e);
+        }
+    }
+
+    private int dispatchBatch(List<Notification> notifications){
+        List<Map<String, Object>> events = jdbcTemplate.queryForList("select id, type, message from outboxevent where todispatched is null order by id limit ? for update", batchSize);
+        if(events.isEmpty()) return 0;
+
+        Set<Integer> designationIds = new HashSet<>();
+        for (Map<String, Object> event : events) designationIds.add(EventType.valueOf(event.get("type").toString()).designationId);
+
+        Map<Integer, List<Recipient>> recipients = new HashMap<>();
+        for (Recipient recipient : getRecipients(designationIds)) {
+            recipients.computeIfAbsent(recipient.designationId, id -> new ArrayList<>()).add(recipient);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = new ArrayList<>();
+        for (Map<String, Object> event : events) {
+            ids.add(((Number) event.get("id")).longValue());
+            List<Recipient> list = recipients.get(EventType.valueOf(event.get("type").toString()).designationId);
+            if(list == null) continue;
+            for (Recipient recipient : list) {
+                Notification notification = new Notification(UUID.randomUUID().toString());
+                notification.setUser(new User(recipient.userId));
+                notification.setDosend(now);
+                notification.setMessage("Hello" + recipient.callingname + ", " + event.get("message"));
+                notifications.add(notification);
+            }
+        }
+
+        if(!notifications.isEmpty()){
+            jdbcTemplate.batchUpdate(INSERT_NOTIFICATION_QUERY, notifications, notifications.size(), (statement, notification) -> {
+                statement.setString(1, notification.getId());
+                statement.setTimestamp(2, Timestamp.valueOf(notification.getDosend()));
+                statement.setString(3, notification.getMessage());
+                statement.setInt(4, notification.getUser().getId());
+            });
+        }
+        namedParameterJdbcTemplate.update("update outboxevent set todispatched=:now where id in (:ids)",
+                new MapSqlParameterSource("now", Timestamp.valueOf(now)).addValue("ids", ids));
+        return events.size();
+    }
+
+    /**
+     * The first user account of every employee of the designations.
+     */
+    private List<Recipient> getRecipients(Set<Integer> designationIds){
+        return namedParameterJdbcTemplate.query(
+                "select e.designation_id, e.callingname, min(u.id) user_id from employee e inner join user u on u.employee_id=e.id where e.designation_id in (:designationIds) group by e.id, e.designation_id, e.callingname",
+                new MapSqlParameterSource("designationIds", designationIds),
+                (rs, rowNum) -> new Recipient(rs.getInt("designation_id"), rs.getString("callingname"), rs.getInt("user_id")));
+    }
+
+    private static class Recipient {
+        private final int designationId;
+        private final String callingname;
+        private final int userId;
+
+        private Recipient(int designationId, String callingname, int userId){
+            this.designationId = designationId;
+            this.callingname = callingname;
+            this.userId = userId;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package bit.project.server.util.pricing;
+
+import bit.project.server.dao.ItemDao;
+import bit.project.server.dao.PromotionDao;
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Saleitem;
+import bit.project.server.util.dto.PricedBasket;
+import bit.project.server.util.exception.BadRequestException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prices sale baskets from the current item prices and the active promotions.
+ * Unit prices sent by the client are ignored. Updated sales are repriced with {@link #reprice}, which keeps the
+ * prices the sale was made at. The promotions are compiled into {@link PromotionRules} on first use,
+ * again on the next day and after {@link #invalidate()}, which is called whenever a promotion is added or deleted.
+ */
+@Component
+public class PricingEngine {
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private ItemDao itemDao;
+    @Autowired private PromotionDao promotionDao;
+
+    private volatile PromotionRules rules;
+    private final AtomicLong version = new AtomicLong();
+
+    public void install(){
+        jdbcTemplate.execute("create table if not exists promotion(id int not null auto_increment primary key, name varchar(100) not null, type varchar(20) not null, buyqty int null, payqty int null, percentage int null, price decimal(10,2) null, dostart date null, doend date null, tocreation datetime null, creator_id int null)");
+        jdbcTemplate.execute("create table if not exists promotionitem(promotion_id int not null, item_id int not null, primary key(promotion_id, item_id))");
+
+        Integer count = jdbcTemplate.queryForObject("select count(*) from information_schema.columns where table_schema=database() and table_name='saleitem' and column_name='discount'", Integer.class);
+        if(count != null && count == 0) jdbcTemplate.execute("alter table saleitem add column discount decimal(10,2) null");
+    }
+
+    /**
+     * Prices the basket and sets the current unit price and the discount on every line, so the line totals add up
+     * to the basket total. Lines of the same item are merged into the first of them, so the list may shrink.
+     */
+    public PricedBasket price(List<Saleitem> saleitems){
+        if(saleitems == null || saleitems.isEmpty()) throw new BadRequestException("At least one item is required");
+        return price(saleitems, loadItems(saleitems, Collections.emptySet()));
+    }
+
+    /**
+     * Prices the basket with items already loaded by id, which lets a batch of baskets share one item lookup.
+     */
+    public PricedBasket price(List<Saleitem> saleitems, Map<Integer, Item> items){
+        return price(saleitems, items, Collections.emptyMap(), getRules());
+    }
+
+    /**
+     * Prices the basket of a sale that is being updated. Items that were already on the sale keep the unit price
+     * they were sold at, whatever their quantity now; only items added to the sale take the current price.
+     * The promotions are those that were active on the day of the sale.
+     */
+    public PricedBasket reprice(List<Saleitem> saleitems, List<Saleitem> oldSaleitems, LocalDate day){
+        if(saleitems == null || saleitems.isEmpty()) throw new BadRequestException("At least one item is required");
+
+        Map<Integer, BigDecimal> keptPrices = new HashMap<>();
+        for (Saleitem saleitem : oldSaleitems) keptPrices.put(saleitem.getItem().getId(), saleitem.getUnitprice());
+        PromotionRules dayRules = day.equals(LocalDate.now()) ? getRules() : PromotionRules.compile(promotionDao.findAllWithItems(), day);
+        return price(saleitems, loadItems(saleitems, keptPrices.keySet()), keptPrices, dayRules);
+    }
+
+    private Map<Integer, Item> loadItems(List<Saleitem> saleitems, Set<Integer> excluded){
+        Set<Integer> itemIds = new HashSet<>();
+        for (Saleitem saleitem : saleitems) if(saleitem.getItem() != null) itemIds.add(saleitem.getItem().getId());
+        itemIds.remove(null);
+        itemIds.removeAll(excluded);
+
+        Map<Integer, Item> items = new HashMap<>();
+        if(!itemIds.isEmpty()) for (Item item : itemDao.findAllBasicByIdIn(itemIds)) items.put(item.getId(), item);
+        return items;
+    }
+
+    private PricedBasket price(List<Saleitem> saleitems, Map<Integer, Item> items, Map<Integer, BigDecimal> keptPrices, PromotionRules dayRules){
+        if(saleitems == null || saleitems.isEmpty()) throw new BadRequestException("At least one item is required");
+
+        Map<Integer, Saleitem> lines = new LinkedHashMap<>();
+        Iterator<Saleitem> iterator = saleitems.iterator();
+        while (iterator.hasNext()){
+            Saleitem saleitem = iterator.next();
+            if(saleitem.getItem() == null || saleitem.getItem().getId() == null) throw new BadRequestException("Invalid item");
+            if(saleitem.getQty() == null || saleitem.getQty() <= 0) throw new BadRequestException("Quantity should be a positive number");
+
+            Saleitem line = lines.get(saleitem.getItem().getId());
+            if(line == null){
+                lines.put(saleitem.getItem().getId(), saleitem);
+            }else{
+                line.setQty(line.getQty() + saleitem.getQty());
+                iterator.remove();
+            }
+        }
+
+        int n = saleitems.size();
+        int[] itemIds = new int[n];
+        long[] unitPrices = new long[n];
+        int[] qtys = new int[n];
+        for (int i = 0; i < n; i++) {
+            Saleitem saleitem = saleitems.get(i);
+            BigDecimal price = keptPrices.get(saleitem.getItem().getId());
+            if(price == null){
+                Item item = items.get(saleitem.getItem().getId());
+                if(item == null) throw new BadRequestException("Invalid item");
+                if(item.getPrice() == null) throw new BadRequestException("Item " + item.getCode() + " has no price");
+                price = item.getPrice();
+            }
+
+            itemIds[i] = saleitem.getItem().getId();
+            unitPrices[i] = PromotionRules.toCents(price);
+            qtys[i] = saleitem.getQty();
+        }
+
+        long[] lineDiscounts = new long[n];
+        long total = dayRules.apply(n, itemIds, unitPrices, qtys, lineDiscounts, new int[n]);
+
+        PricedBasket basket = new PricedBasket();
+        long discount = 0;
+        for (int i = 0; i < n; i++) {
+            BigDecimal unitprice = PromotionRules.toAmount(unitPrices[i]);
+            saleitems.get(i).setUnitprice(unitprice);
+            saleitems.get(i).setDiscount(PromotionRules.toAmount(lineDiscounts[i]));
+            basket.getLines().add(new PricedBasket.Line(itemIds[i], qtys[i], unitprice,
+                    PromotionRules.toAmount(lineDiscounts[i]), PromotionRules.toAmount(unitPrices[i] * qtys[i] - lineDiscounts[i])));
+            discount += lineDiscounts[i];
+        }
+        basket.setSubtotal(PromotionRules.toAmount(total + discount));
+        basket.setDiscount(PromotionRules.toAmount(discount));
+        basket.setTotal(PromotionRules.toAmount(total));
+        return basket;
+    }
+
+    public void invalidate(){
+        version.incrementAndGet();
+        rules = null;
+    }
+
+    private PromotionRules getRules(){
+        LocalDate today = LocalDate.now();
+        PromotionRules current = rules;
+        if(current == null || !current.isFor(today)){
+            long loadedVersion = version.get();
+            current = PromotionRules.compile(promotionDao.findAllWithItems(), today);
+            synchronized (this){
+                if(loadedVersion == version.get()) rules = current;
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,169 @@
+package bit.project.server.util.pricing;
+
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Promotion;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * The promotions active on one day, compiled into primitive arrays.
+ * Item rules are looked up with a binary search over the sorted item ids, so pricing a basket does not
+ * allocate or box anything. All amounts are in cents.
+ */
+final class PromotionRules {
+
+    private final LocalDate day;
+
+    private final int[] itemIds;
+    private final int[] ruleOffsets;
+    private final int[] buyQtys;
+    private final int[] payQtys;
+    private final int[] percentages;
+
+    private final int[][] bundleItemIds;
+    private final long[] bundlePrices;
+
+    private PromotionRules(LocalDate day, int[] itemIds, int[] ruleOffsets, int[] buyQtys, int[] payQtys, int[] percentages,
+                           int[][] bundleItemIds, long[] bundlePrices){
+        this.day = day;
+        this.itemIds = itemIds;
+        this.ruleOffsets = ruleOffsets;
+        this.buyQtys = buyQtys;
+        this.payQtys = payQtys;
+        this.percentages = percentages;
+        this.bundleItemIds = bundleItemIds;
+        this.bundlePrices = bundlePrices;
+    }
+
+    static PromotionRules compile(List<Promotion> promotions, LocalDate day){
+        TreeMap<Integer, List<Promotion>> itemPromotions = new TreeMap<>();
+        List<Promotion> bundles = new ArrayList<>();
+
+        for (Promotion promotion : promotions) {
+            if(promotion.getDostart() != null && promotion.getDostart().isAfter(day)) continue;
+            if(promotion.getDoend() != null && promotion.getDoend().isBefore(day)) continue;
+
+            if(PromotionType.of(promotion.getType()) == PromotionType.BUNDLE){
+                bundles.add(promotion);
+                continue;
+            }
+            for (Item item : promotion.getItemList()) itemPromotions.computeIfAbsent(item.getId(), id -> new ArrayList<>()).add(promotion);
+        }
+
+        int ruleCount = 0;
+        for (List<Promotion> list : itemPromotions.values()) ruleCount += list.size();
+
+        int[] itemIds = new int[itemPromotions.size()];
+        int[] ruleOffsets = new int[itemPromotions.size() + 1];
+        int[] buyQtys = new int[ruleCount];
+        int[] payQtys = new int[ruleCount];
+        int[] percentages = new int[ruleCount];
+
+        int i = 0;
+        int rule = 0;
+        for (Map.Entry<Integer, List<Promotion>> entry : itemPromotions.entrySet()) {
+            itemIds[i] = entry.getKey();
+            ruleOffsets[i] = rule;
+            for (Promotion promotion : entry.getValue()) {
+                if(PromotionType.of(promotion.getType()) == PromotionType.MULTI_BUY){
+                    buyQtys[rule] = promotion.getBuyqty();
+                    payQtys[rule] = promotion.getPayqty();
+                }else{
+                    percentages[rule] = promotion.getPercentage();
+                }
+                rule++;
+            }
+            i++;
+        }
+        ruleOffsets[i] = rule;
+
+        // A bundle lists every item once, as promotionitem is keyed by promotion and item, and takes one unit of each
+        int[][] bundleItemIds = new int[bundles.size()][];
+        long[] bundlePrices = new long[bundles.size()];
+        for (int b = 0; b < bundles.size(); b++) {
+            bundleItemIds[b] = bundles.get(b).getItemList().stream().mapToInt(Item::getId).toArray();
+            bundlePrices[b] = toCents(bundles.get(b).getPrice());
+        }
+
+        return new PromotionRules(day, itemIds, ruleOffsets, buyQtys, payQtys, percentages, bundleItemIds, bundlePrices);
+    }
+
+    boolean isFor(LocalDate day){
+        return this.day.equals(day);
+    }
+
+    /**
+     * Prices n basket lines of distinct items and returns the net total.
+     * Bundles take their units first; each line then gets the best single item rule on its remaining units.
+     * The discount of each line is written to lineDiscounts, free is scratch space of at least n elements.
+     */
+    long apply(int n, int[] lineItemIds, long[] unitPrices, int[] qtys, long[] lineDiscounts, int[] free){
+        for (int i = 0; i < n; i++) {
+            free[i] = qtys[i];
+            lineDiscounts[i] = 0;
+        }
+
+        for (int b = 0; b < bundleItemIds.length; b++) applyBundle(b, n, lineItemIds, unitPrices, lineDiscounts, free);
+
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            int r = Arrays.binarySearch(itemIds, lineItemIds[i]);
+            if(r >= 0 && free[i] > 0){
+                long best = 0;
+                for (int k = ruleOffsets[r]; k < ruleOffsets[r + 1]; k++) {
+                    long discount;
+                    if(buyQtys[k] > 0){
+                        discount = (long) (free[i] / buyQtys[k]) * (buyQtys[k] - payQtys[k]) * unitPrices[i];
+                    }else{
+                        discount = (unitPrices[i] * free[i] * percentages[k] + 50) / 100;
+                    }
+                    if(discount > best) best = discount;
+                }
+                lineDiscounts[i] += best;
+            }
+            total += unitPrices[i] * qtys[i] - lineDiscounts[i];
+        }
+        return total;
+    }
+
+    private void applyBundle(int b, int n, int[] lineItemIds, long[] unitPrices, long[] lineDiscounts, int[] free){
+        int[] items = bundleItemIds[b];
+        int sets = Integer.MAX_VALUE;
+        long fullPrice = 0;
+        for (int j = 0; j < items.length; j++) {
+            int line = indexOf(items[j], n, lineItemIds);
+            if(line < 0) return;
+            sets = Math.min(sets, free[line]);
+            fullPrice += unitPrices[line];
+        }
+
+        long saving = fullPrice - bundlePrices[b];
+        if(sets == 0 || saving <= 0) return;
+
+        // The saving is shared among the lines in proportion to their prices, the last line takes the remainder.
+        long remaining = saving * sets;
+        for (int j = 0; j < items.length; j++) {
+            int line = indexOf(items[j], n, lineItemIds);
+            long share = j == items.length - 1 ? remaining : saving * sets * unitPrices[line] / fullPrice;
+            lineDiscounts[line] += share;
+            remaining -= share;
+            free[line] -= sets;
+        }
+    }
+
+    private static int indexOf(int itemId, int n, int[] lineItemIds){
+        for (int i = 0; i < n; i++) if(lineItemIds[i] == itemId) return i;
+        return -1;
+    }
+
+    static long toCents(BigDecimal amount){
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    static BigDecimal toAmount(long cents){
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
@@ -0,0 +1,15 @@
+package bit.project.server.util.pricing;
+
+public enum PromotionType {
+    /** Buy buyqty units of an item, pay for payqty of them. */
+    MULTI_BUY,
+    /** A percentage off the price of an item. */
+    PERCENTAGE,
+    /** One unit of each item of the promotion for a fixed price. */
+    BUNDLE;
+
+    public static PromotionType of(String value){
+        for (PromotionType type : values()) if(type.name().equalsIgnoreCase(value)) return type;
+        return null;
+    }
+}
@@ -0,0 +1,136 @@
+package bit.project.server.util.reference;
+
+import bit.project.server.entity.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The lookup tables behind the form dropdowns, held in memory as ready-to-send JSON with a strong entity tag
+ * (a hash of the JSON). A request that still has the current list gets 304 Not Modified, and any other is answered
+ * from memory, so neither touches the database or serializes anything.
+ * These tables only change when they are seeded, so the cache is reloaded by {@link #reload()} after the seeder
+ * commits, and loaded on first use otherwise.
+ */
+@Component
+public class ReferenceData {
+
+    private static final List<Class<?>> ENTITIES = List.of(
+            Category.class, Civilstatus.class, Designation.class, Employeestatus.class, Gender.class,
+            Itemstatus.class, Nametitle.class, Supplierstatus.class, Suppliertype.class, Systemmodule.class);
+
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicLong version = new AtomicLong();
+    private volatile Map<Class<?>, Entry> entries;
+
+    public ReferenceData(EntityManager entityManager, ObjectMapper objectMapper, PlatformTransactionManager transactionManager){
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Writes all rows of the entity's table as JSON, or 304 Not Modified when the request's entity tag matches.
+     */
+    public void serve(Class<?> entityClass, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Entry entry = getEntries().get(entityClass);
+        if(entry == null) throw new IllegalArgumentException(entityClass.getSimpleName() + " is not reference data");
+
+        response.setHeader("ETag", entry.etag);
+        response.setHeader("Cache-Control", "no-cache");
+        if(matches(request.getHeader("If-None-Match"), entry.etag)){
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(entry.json.length);
+        response.getOutputStream().write(entry.json);
+    }
+
+    public void reload(){
+        long loadedVersion = version.incrementAndGet();
+        Map<Class<?>, Entry> loaded = load();
+        synchronized (this){
+            if(loadedVersion == version.get()) entries = loaded;
+        }
+    }
+
+    private Map<Class<?>, Entry> getEntries(){
+        Map<Class<?>, Entry> current = entries;
+        if(current == null){
+            long loadedVersion = version.get();
+            current = load();
+            synchronized (this){
+                if(loadedVersion == version.get()) entries = current;
+            }
+        }
+        return current;
+    }
+
+    private Map<Class<?>, Entry> load(){
+        // Serialized inside the transaction, as system modules carry their lazily loaded usecases
+        return transactionTemplate.execute(status -> {
+            Map<Class<?>, Entry> loaded = new HashMap<>();
+            for (Class<?> entityClass : ENTITIES) {
+                List<?> rows = entityManager.createQuery("select e from " + entityClass.getSimpleName() + " e order by e.id", entityClass).getResultList();
+                try {
+                    byte[] json = objectMapper.writeValueAsBytes(rows);
+                    loaded.put(entityClass, new Entry(json, "\"" + hash(json) + "\""));
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+                entityManager.clear();
+            }
+            return Map.copyOf(loaded);
+        });
+    }
+
+    private static String hash(byte[] bytes){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag){
+        if(ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if(tag.startsWith("W/")) tag = tag.substring(2);
+            if(tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static class Entry {
+        private final byte[] json;
+        private final String etag;
+
+        private Entry(byte[] json, String etag){
+            this.json = json;
+            this.etag = etag;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package bit.project.server.util.search;
+
+import bit.project.server.dao.CustomerDao;
+import bit.project.server.dao.EmployeeDao;
+import bit.project.server.dao.ItemDao;
+import bit.project.server.dao.SupplierDao;
+import bit.project.server.entity.Customer;
+import bit.project.server.entity.Employee;
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Supplier;
+import bit.project.server.util.dto.SearchHit;
+import bit.project.server.util.exception.InternalServerErrorException;
+import org.apache.lucene.analysis.*;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.ngram.NGramTokenFilter;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Embedded Lucene index over items, suppliers, customers and employees.
+ * Controllers keep it current on save and delete; it is rebuilt from the tables when no index exists on disk.
+ */
+@Component
+public class SearchIndex {
+
+    public enum Type{
+        ITEM("item", "/items/"),
+        SUPPLIER("supplier", "/suppliers/"),
+        CUSTOMER("customer", "/customers/"),
+        EMPLOYEE("employee", "/employees/");
+
+        public final String value;
+        public final String link;
+
+        Type(String value, String link){
+            this.value = value;
+            this.link = link;
+        }
+
+        public static Type of(String value){
+            for (Type type : values()) if(type.value.equalsIgnoreCase(value.trim())) return type;
+            return null;
+        }
+    }
+
+    private static final String UID = "uid";
+    private static final String TYPE = "type";
+    private static final String ID = "id";
+    private static final String CODE = "code";
+    private static final String TITLE = "title";
+    private static final String TEXT = "text";
+    private static final String NGRAM = "ngram";
+    private static final int NGRAM_SIZE = 3;
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private final Logger logger = LoggerFactory.getLogger(SearchIndex.class);
+
+    private final ItemDao itemDao;
+    private final SupplierDao supplierDao;
+    private final CustomerDao customerDao;
+    private final EmployeeDao employeeDao;
+
+    private final Analyzer analyzer;
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final boolean existingIndex;
+
+    public SearchIndex(ItemDao itemDao, SupplierDao supplierDao, CustomerDao customerDao, EmployeeDao employeeDao,
+                       @Value("${search.index-directory:search-index}") String indexDirectory) throws IOException {
+        this.itemDao = itemDao;
+        this.supplierDao = supplierDao;
+        this.customerDao = customerDao;
+        this.employeeDao = employeeDao;
+
+        Analyzer ngramAnalyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer source = new StandardTokenizer();
+                TokenStream result = new LowerCaseFilter(source);
+                result = new NGramTokenFilter(result, NGRAM_SIZE, NGRAM_SIZE, false);
+                return new TokenStreamComponents(source, result);
+            }
+        };
+        analyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(CharArraySet.EMPTY_SET), Map.of(NGRAM, ngramAnalyzer));
+
+        directory = FSDirectory.open(Paths.get(indexDirectory));
+        existingIndex = DirectoryReader.indexExists(directory);
+        writer = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        searcherManager = new SearcherManager(writer, null);
+    }
+
+    public void buildIfEmpty() throws IOException {
+        if(!existingIndex) rebuild();
+    }
+
+    public synchronized void rebuild() throws IOException {
+        long start = System.currentTimeMillis();
+        writer.deleteAll();
+        indexAll(itemDao::findAll, this::toDocument);
+        indexAll(supplierDao::findAll, this::toDocument);
+        indexAll(customerDao::findAll, this::toDocument);
+        indexAll(employeeDao::findAll, this::toDocument);
+        writer.commit();
+        searcherManager.maybeRefresh();
+        logger.info("Search index rebuilt with " + writer.getDocStats().numDocs + " documents in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public void index(Item item){
+        update(Type.ITEM, item.getId(), toDocument(item));
+    }
+
+    public void index(Supplier supplier){
+        update(Type.SUPPLIER, supplier.getId(), toDocument(supplier));
+    }
+
+    public void index(Customer customer){
+        update(Type.CUSTOMER, customer.getId(), toDocument(customer));
+    }
+
+    public void index(Employee employee){
+        update(Type.EMPLOYEE, employee.getId(), toDocument(employee));
+    }
+
+    public void delete(Type type, Integer id){
+        try {
+            writer.deleteDocuments(new Term(UID, uid(type, id)));
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            logger.warn("Unable to remove " + uid(type, id) + " from search index", e);
+        }
+    }
+
+    /**
+     * Every word of the text has to match, either exactly, as a prefix, within a small edit distance or as a substring.
+     * Exact matches rank above prefix matches, which rank above fuzzy and substring matches.
+     */
+    public List<SearchHit> search(String text, Set<Type> types, int limit){
+        List<String> words = analyze(TEXT, text);
+        if(words.isEmpty() || types.isEmpty()) return new ArrayList<>();
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        for (String word : words) query.add(wordQuery(word), BooleanClause.Occur.MUST);
+
+        BooleanQuery.Builder typeFilter = new BooleanQuery.Builder();
+        for (Type type : types) typeFilter.add(new TermQuery(new Term(TYPE, type.value)), BooleanClause.Occur.SHOULD);
+        query.add(typeFilter.build(), BooleanClause.Occur.FILTER);
+
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                List<SearchHit> hits = new ArrayList<>();
+                for (ScoreDoc scoreDoc : searcher.search(query.build(), limit).scoreDocs) {
+                    Document document = searcher.doc(scoreDoc.doc);
+                    Type type = Type.of(document.get(TYPE));
+                    Integer id = document.getField(ID).numericValue().intValue();
+                    hits.add(new SearchHit(type.value, id, document.get(CODE), document.get(TITLE), type.link + id, scoreDoc.score));
+                }
+                return hits;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new InternalServerErrorException("Search index is not available", e);
+        }
+    }
+
+    @Scheduled(fixedDelay = 5000)
+    public void commit() throws IOException {
+        if(writer.hasUncommittedChanges()) writer.commit();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        commit();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    private Query wordQuery(String word){
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        query.add(new BoostQuery(new TermQuery(new Term(TEXT, word)), 4f), BooleanClause.Occur.SHOULD);
+        query.add(new BoostQuery(new PrefixQuery(new Term(TEXT, word)), 2f), BooleanClause.Occur.SHOULD);
+        if(word.length() > NGRAM_SIZE){
+            query.add(new FuzzyQuery(new Term(TEXT, word), word.length() > 6 ? 2 : 1), BooleanClause.Occur.SHOULD);
+        }
+
+        List<String> grams = analyze(NGRAM, word);
+        if(!grams.isEmpty()){
+            BooleanQuery.Builder substring = new BooleanQuery.Builder();
+            for (String gram : grams) substring.add(new TermQuery(new Term(NGRAM, gram)), BooleanClause.Occur.MUST);
+            query.add(new ConstantScoreQuery(substring.build()), BooleanClause.Occur.SHOULD);
+        }
+        return query.build();
+    }
+
+    private List<String> analyze(String field, String text){
+        LinkedHashSet<String> terms = new LinkedHashSet<>();
+        try (TokenStream stream = analyzer.tokenStream(field, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) terms.add(term.toString());
+            stream.end();
+        } catch (IOException e) {
+            throw new InternalServerErrorException("Unable to analyze search text", e);
+        }
+        return new ArrayList<>(terms);
+    }
+
+    private void update(Type type, Integer id, Document document){
+        try {
+            writer.updateDocument(new Term(UID, uid(type, id)), document);
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            logger.warn("Unable to index " + uid(type, id), e);
+        }
+    }
+
+    private <T> void indexAll(Function<Pageable, Page<T>> finder, Function<T, Document> mapper) throws IOException {
+        Pageable pageable = PageRequest.of(0, REBUILD_BATCH_SIZE, Sort.by("id"));
+        Page<T> page;
+        do {
+            page = finder.apply(pageable);
+            for (T entity : page.getContent()) writer.addDocument(mapper.apply(entity));
+            pageable = pageable.next();
+        } while (page.hasNext());
+    }
+
+    private Document toDocument(Item item){
+        String category = item.getCategory() == null ? null : item.getCategory().getName();
+        return toDocument(Type.ITEM, item.getId(), item.getCode(), item.getName(), item.getDescription(), category);
+    }
+
+    private Document toDocument(Supplier supplier){
+        return toDocument(Type.SUPPLIER, supplier.getId(), supplier.getCode(), supplier.getName(),
+                supplier.getEmail(), supplier.getContact1(), supplier.getAddress(), supplier.getDescription());
+    }
+
+    private Document toDocument(Customer customer){
+        return toDocument(Type.CUSTOMER, customer.getId(), customer.getCode(), customer.getName(),
+                customer.getEmail(), customer.getContact1(), customer.getAddress(), customer.getDescription());
+    }
+
+    private Document toDocument(Employee employee){
+        return toDocument(Type.EMPLOYEE, employee.getId(), employee.getCode(), employee.getCallingname(),
+                employee.getFullname(), employee.getNic(), employee.getMobile(), employee.getEmail());
+    }
+
+    private Document toDocument(Type type, Integer id, String code, String title, String... texts){
+        StringJoiner content = new StringJoiner(" ");
+        if(code != null) content.add(code);
+        if(title != null) content.add(title);
+        for (String text : texts) if(text != null) content.add(text);
+
+        Document document = new Document();
+        document.add(new StringField(UID, uid(type, id), Field.Store.NO));
+        document.add(new StringField(TYPE, type.value, Field.Store.YES));
+        document.add(new StoredField(ID, id));
+        if(code != null) document.add(new StoredField(CODE, code));
+        if(title != null) document.add(new StoredField(TITLE, title));
+        document.add(new TextField(TEXT, content.toString(), Field.Store.NO));
+        document.add(new TextField(NGRAM, content.toString(), Field.Store.NO));
+        return document;
+    }
+
+    private static String uid(Type type, Integer id){
+        return type.value + ":" + id;
+    }
+}
@@ -27,7 +27,6 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Component
 public class AccessControlManager {
@@ -37,28 +36,32 @@ public class AccessControlManager {
 
     @Autowired private TokenDao tokenDao;
     @Autowired private UserDao userDao;
+    @Autowired private PrincipalCache principalCache;
+    @Autowired private RolePermissions rolePermissions;
 
-    private Token getActiveToken(HttpServletRequest request){
+    private String getTokenId(HttpServletRequest request){
         String tokenString = request.getHeader("Authorization");
 
         if (tokenString == null) throw new AuthenticationFailedException("Authentication token is missing");
         try{
             Claims body = Jwts.parser().setSigningKey(SECRET_KEY).parseClaimsJws(tokenString).getBody();
-            String tokenId = body.get("id").toString();
-
-            Optional<Token> tokenOptional = tokenDao.findById(tokenId);
-            if (tokenOptional.isEmpty()) throw new AuthenticationFailedException();
+            return body.get("id").toString();
+        }catch (MalformedJwtException e){
+            throw new AuthenticationFailedException("Incorrect authentication token");
+        }
+    }
 
-            Token token = tokenOptional.get();
+    private Token getActiveToken(HttpServletRequest request){
+        Optional<Token> tokenOptional = tokenDao.findById(getTokenId(request));
+        if (tokenOptional.isEmpty()) throw new AuthenticationFailedException();
 
-            if(!token.getStatus().equals(Tokenstatus.ACTIVE.toString())){
-                throw new AuthenticationFailedException();
-            }
+        Token token = tokenOptional.get();
 
-            return token;
-        }catch (MalformedJwtException e){
-            throw new AuthenticationFailedException("Incorrect authentication token");
+        if(!token.getStatus().equals(Tokenstatus.ACTIVE.toString())){
+            throw new AuthenticationFailedException();
         }
+
+        return token;
     }
 
     private User getUserByUsername(String username){
@@ -75,21 +78,35 @@ public class AccessControlManager {
     }
 
     public User authenticate(HttpServletRequest request){
-        try {
-            Token token = getActiveToken(request);
+        return getPrincipal(request).getUser();
+    }
 
+    /**
+     * Resolves the token of the request to its principal, from the principal cache when possible.
+     * A cache miss loads the token, the user and the user's usecases once and caches the result.
+     */
+    public UserPrincipal getPrincipal(HttpServletRequest request){
+        try {
+            String tokenId = getTokenId(request);
+            UserPrincipal principal = principalCache.get(tokenId);
+
+            if(principal == null){
+                long generation = principalCache.getGeneration();
+                Token token = getActiveToken(request);
+                principal = new UserPrincipal(token, rolePermissions.getMask(token.getUser().getRoleList()));
+                principalCache.put(principal, generation);
+            }
 
-            if(token.getToexpiration()!=null){
-                LocalDateTime expAt = token.getToexpiration();
-                if(LocalDateTime.now().compareTo(expAt) > 0){
-                    token.setStatus(Tokenstatus.EXPIRED.toString());
-                    tokenDao.save(token);
-                    throw new AuthenticationFailedException();
-                }
+            if(principal.isExpired()){
+                principalCache.invalidate(tokenId);
+                Token token = principal.getToken();
+                token.setStatus(Tokenstatus.EXPIRED.toString());
+                tokenDao.save(token);
+                throw new AuthenticationFailedException();
             }
 
-            request.setAttribute("token", token);
-            return token.getUser();
+            request.setAttribute("token", principal.getToken());
+            return principal;
         }catch (AuthenticationFailedException e) {
             throw e;
         } catch (Exception e) {
@@ -102,35 +119,28 @@ public class AccessControlManager {
     }
 
     public User authorize(HttpServletRequest request, String message, UsecaseList usecaseId, UsecaseList... usecaseIds){
-        User authenticatedUser = authenticate(request);
-
-        List<Integer> usecaseIdList = new ArrayList<>();
-        for (UsecaseList uid: usecaseIds) usecaseIdList.add(uid.value);
-        usecaseIdList.add(usecaseId.value);
-
-        if(!authenticatedUser.isSuperAdmin()){
-            boolean authorized = false;
-            List<Usecase> usecases = getUsecases(authenticatedUser);
-            top:
-            for(Integer uid: usecaseIdList){
-                for(Usecase usecase: usecases){
-                    if(usecase.getId().equals(uid)){
-                        authorized = true;
-                        break top;
-                    }
-                }
-            }
-            if(!authorized) throw new NoPrivilegeException(message);
-        }
+        UserPrincipal principal = getPrincipal(request);
+
+        UsecaseList[] usecaseList = Arrays.copyOf(usecaseIds, usecaseIds.length + 1);
+        usecaseList[usecaseIds.length] = usecaseId;
+
+        if(!principal.hasPrivilege(usecaseList)) throw new NoPrivilegeException(message);
+
+        return principal.getUser();
+    }
+
+    public List<Usecase> getUsecases(UserPrincipal principal){
+        if(principal.getUser().isSuperAdmin()) return rolePermissions.getAllUsecases();
+        return rolePermissions.getUsecases(principal.getPermissions());
+    }
 
-        return authenticatedUser;
+    public void invalidatePrincipals(User user){
+        principalCache.invalidateUser(user.getId());
     }
 
-    public List<Usecase> getUsecases(User user){
-        List<Role> roles = user.getRoleList();
-        List<Usecase> privileges = new ArrayList<>();
-        for(Role role : roles) privileges.addAll(role.getUsecaseList());
-        return privileges.stream().distinct().collect(Collectors.toList());
+    public void invalidateRolePermissions(){
+        rolePermissions.invalidate();
+        principalCache.invalidateAll();
     }
 
     public ClientToken getToken(LoginRequest loginRequest) {
@@ -197,6 +207,7 @@ public class AccessControlManager {
         Token token = getActiveToken(request);
         token.setStatus(Tokenstatus.DELETED.toString());
         tokenDao.save(token);
+        principalCache.invalidate(token.getId());
     }
 
     public List<Token> getActiveTokensByUser(User user){
@@ -236,6 +247,7 @@ public class AccessControlManager {
     }
 
     public void destroyToken(Token token){
+        principalCache.invalidate(token.getId());
         if(token.getStatus().equals(Tokenstatus.ACTIVE.toString())){
             if(token.getToexpiration()!=null){
 
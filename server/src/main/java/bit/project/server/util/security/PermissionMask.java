@@ -0,0 +1,54 @@
+package bit.project.server.util.security;
+
+import bit.project.server.UsecaseList;
+
+import java.util.Arrays;
+
+/**
+ * Immutable bitset of usecase ids, one bit per {@link UsecaseList} value.
+ */
+public final class PermissionMask {
+
+    private static final int WORD_COUNT = Arrays.stream(UsecaseList.values()).mapToInt(usecase -> usecase.value).max().orElse(0) / 64 + 1;
+
+    public static final PermissionMask EMPTY = new PermissionMask(new long[WORD_COUNT]);
+
+    private final long[] words;
+
+    private PermissionMask(long[] words){
+        this.words = words;
+    }
+
+    public static PermissionMask of(UsecaseList... usecases){
+        long[] words = new long[WORD_COUNT];
+        for (UsecaseList usecase : usecases) set(words, usecase.value);
+        return new PermissionMask(words);
+    }
+
+    public static PermissionMask ofIds(Iterable<Integer> usecaseIds){
+        long[] words = new long[WORD_COUNT];
+        for (Integer usecaseId : usecaseIds) set(words, usecaseId);
+        return new PermissionMask(words);
+    }
+
+    public PermissionMask or(PermissionMask other){
+        long[] result = words.clone();
+        for (int i = 0; i < result.length; i++) result[i] |= other.words[i];
+        return new PermissionMask(result);
+    }
+
+    public boolean intersects(PermissionMask other){
+        for (int i = 0; i < words.length; i++) if((words[i] & other.words[i]) != 0) return true;
+        return false;
+    }
+
+    public boolean contains(int usecaseId){
+        int word = usecaseId >>> 6;
+        return word < words.length && (words[word] & (1L << usecaseId)) != 0;
+    }
+
+    private static void set(long[] words, int usecaseId){
+        int word = usecaseId >>> 6;
+        if(word < words.length) words[word] |= 1L << usecaseId;
+    }
+}
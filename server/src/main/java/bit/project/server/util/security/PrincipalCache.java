@@ -0,0 +1,93 @@
+package bit.project.server.util.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of resolved principals keyed by token id.
+ * Entries live for at most the configured ttl so changes made outside the application are picked up eventually.
+ */
+@Component
+public class PrincipalCache {
+
+    private final long ttlMillis;
+    private final Map<String, UserPrincipal> principals;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+
+    public PrincipalCache(MeterRegistry meterRegistry,
+                          @Value("${security.principal-cache.ttl-seconds:60}") long ttlSeconds,
+                          @Value("${security.principal-cache.max-size:10000}") int maxSize) {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.principals = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserPrincipal> eldest) {
+                return size() > maxSize;
+            }
+        };
+
+        FunctionCounter.builder("security.principal.cache", hits, AtomicLong::get).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("security.principal.cache", misses, AtomicLong::get).tag("result", "miss").register(meterRegistry);
+        Gauge.builder("security.principal.cache.size", this, PrincipalCache::size).register(meterRegistry);
+    }
+
+    public synchronized UserPrincipal get(String tokenId){
+        UserPrincipal principal = principals.get(tokenId);
+        if(principal != null && System.currentTimeMillis() - principal.getLoadedAt() > ttlMillis){
+            principals.remove(tokenId);
+            principal = null;
+        }
+        if(principal == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return principal;
+    }
+
+    /**
+     * Returns the current generation, to be handed back to {@link #put} so that a principal loaded
+     * before an invalidation is not cached afterwards.
+     */
+    public long getGeneration(){
+        return generation.get();
+    }
+
+    public synchronized void put(UserPrincipal principal, long loadedGeneration){
+        if(loadedGeneration != generation.get()) return;
+        principals.put(principal.getToken().getId(), principal);
+    }
+
+    public synchronized void invalidate(String tokenId){
+        generation.incrementAndGet();
+        principals.remove(tokenId);
+    }
+
+    public synchronized void invalidateUser(Integer userId){
+        generation.incrementAndGet();
+        principals.values().removeIf(principal -> principal.getUser().getId().equals(userId));
+    }
+
+    public synchronized void invalidateAll(){
+        generation.incrementAndGet();
+        principals.clear();
+    }
+
+    public synchronized int size(){
+        return principals.size();
+    }
+
+    public long getHitCount(){
+        return hits.get();
+    }
+
+    public long getMissCount(){
+        return misses.get();
+    }
+}
@@ -1,6 +1,5 @@
 package bit.project.server.util.security;
 
-import bit.project.server.dao.ServicelogDao;
 import bit.project.server.entity.Servicelog;
 import bit.project.server.entity.Token;
 import org.springframework.stereotype.Component;
@@ -8,18 +7,18 @@ import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.Date;
 import java.util.UUID;
 
 @Component
 public class RequestInterceptor extends HandlerInterceptorAdapter {
 
-    private final ServicelogDao servicelogDao;
+    private static final String REQUEST_START_ATTRIBUTE = "requeststart";
 
-    public RequestInterceptor(ServicelogDao servicelogDao) {
-        this.servicelogDao = servicelogDao;
+    private final ServicelogWriter servicelogWriter;
+
+    public RequestInterceptor(ServicelogWriter servicelogWriter) {
+        this.servicelogWriter = servicelogWriter;
     }
 
     @Override
@@ -29,22 +28,25 @@ public class RequestInterceptor extends HandlerInterceptorAdapter {
         response.setHeader("Access-Control-Max-Age", "3600");
         response.setHeader("Access-Control-Allow-Headers", "*");
         response.setHeader("Access-Control-Allow-Credentials", "*");
-        response.setHeader("Connection", "close");
+        request.setAttribute(REQUEST_START_ATTRIBUTE, System.nanoTime());
         return super.preHandle(request, response, handler);
     }
 
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception exception) throws Exception {
         Servicelog servicelog = new Servicelog();
-        servicelog.setHandler(handler.toString());
+        String handlerName = handler.toString();
+        servicelog.setHandler(handlerName.length() > 255 ? handlerName.substring(0, 255) : handlerName);
         servicelog.setMethod(request.getMethod());
         if(request.getQueryString()==null) servicelog.setUrl(request.getRequestURI());
         else servicelog.setUrl(request.getRequestURI()+"?"+request.getQueryString());
         servicelog.setResponsecode(response.getStatus());
         servicelog.setIp(request.getRemoteAddr());
         servicelog.setTorequest(LocalDateTime.now());
+        Object start = request.getAttribute(REQUEST_START_ATTRIBUTE);
+        if(start!=null) servicelog.setDuration((int) ((System.nanoTime() - (long) start) / 1_000_000));
         if(request.getAttribute("token")!=null) servicelog.setToken((Token) request.getAttribute("token"));
         servicelog.setId(UUID.randomUUID().toString());
-        servicelogDao.save(servicelog);
+        servicelogWriter.write(servicelog);
     }
 }
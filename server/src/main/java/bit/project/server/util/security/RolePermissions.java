@@ -0,0 +1,86 @@
+package bit.project.server.util.security;
+
+import bit.project.server.dao.UsecaseDao;
+import bit.project.server.entity.Role;
+import bit.project.server.entity.Usecase;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Permission masks of every role, compiled from the roleusecase table.
+ * The masks are loaded on first use and reloaded after {@link #invalidate()}, which is called whenever
+ * usecases are seeded or a role is added, updated or deleted.
+ */
+@Component
+public class RolePermissions {
+
+    @Autowired private EntityManager entityManager;
+    @Autowired private UsecaseDao usecaseDao;
+
+    private volatile Snapshot snapshot;
+    private final AtomicLong version = new AtomicLong();
+
+    public PermissionMask getMask(List<Role> roles){
+        Snapshot current = getSnapshot();
+        PermissionMask mask = PermissionMask.EMPTY;
+        for (Role role : roles) mask = mask.or(current.roleMasks.getOrDefault(role.getId(), PermissionMask.EMPTY));
+        return mask;
+    }
+
+    public List<Usecase> getUsecases(PermissionMask mask){
+        List<Usecase> usecases = new ArrayList<>();
+        for (Usecase usecase : getSnapshot().usecases) if(mask.contains(usecase.getId())) usecases.add(usecase);
+        return usecases;
+    }
+
+    public List<Usecase> getAllUsecases(){
+        return getSnapshot().usecases;
+    }
+
+    public void invalidate(){
+        version.incrementAndGet();
+        snapshot = null;
+    }
+
+    private Snapshot getSnapshot(){
+        Snapshot current = snapshot;
+        if(current == null){
+            long loadedVersion = version.get();
+            current = load();
+            synchronized (this){
+                if(loadedVersion == version.get()) snapshot = current;
+            }
+        }
+        return current;
+    }
+
+    private Snapshot load(){
+        Map<Integer, List<Integer>> roleUsecaseIds = new HashMap<>();
+        List<?> rows = entityManager.createNativeQuery("select role_id, usecase_id from roleusecase").getResultList();
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            Integer roleId = ((Number) columns[0]).intValue();
+            roleUsecaseIds.computeIfAbsent(roleId, id -> new ArrayList<>()).add(((Number) columns[1]).intValue());
+        }
+
+        Map<Integer, PermissionMask> roleMasks = new HashMap<>();
+        roleUsecaseIds.forEach((roleId, usecaseIds) -> roleMasks.put(roleId, PermissionMask.ofIds(usecaseIds)));
+
+        return new Snapshot(roleMasks, Collections.unmodifiableList(usecaseDao.findAll(Sort.by("id"))));
+    }
+
+    private static class Snapshot {
+        private final Map<Integer, PermissionMask> roleMasks;
+        private final List<Usecase> usecases;
+
+        private Snapshot(Map<Integer, PermissionMask> roleMasks, List<Usecase> usecases){
+            this.roleMasks = roleMasks;
+            this.usecases = usecases;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package bit.project.server.util.security;
+
+import bit.project.server.entity.Servicelog;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers service logs in a bounded queue and writes them in JDBC batches from a background thread,
+ * so that logging never adds a database insert to the request itself.
+ */
+@Component
+public class ServicelogWriter {
+
+    public enum OverflowPolicy{
+        DROP_OLDEST,
+        BLOCK,
+        SAMPLE
+    }
+
+    private static final String INSERT_QUERY = "insert into servicelog(id,method,responsecode,ip,torequest,url,handler,token_id,duration) values(?,?,?,?,?,?,?,?,?)";
+    private static final long BLOCK_TIMEOUT_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(ServicelogWriter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<Servicelog> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong offered = new AtomicLong();
+
+    public ServicelogWriter(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                            @Value("${servicelog.queue-capacity:10000}") int queueCapacity,
+                            @Value("${servicelog.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+                            @Value("${servicelog.sample-rate:10}") int sampleRate,
+                            @Value("${servicelog.batch-size:200}") int batchSize,
+                            @Value("${servicelog.flush-interval-millis:1000}") long flushIntervalMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        FunctionCounter.builder("servicelog.entries", enqueued, AtomicLong::get).tag("state", "enqueued").register(meterRegistry);
+        FunctionCounter.builder("servicelog.entries", written, AtomicLong::get).tag("state", "written").register(meterRegistry);
+        FunctionCounter.builder("servicelog.entries", dropped, AtomicLong::get).tag("state", "dropped").register(meterRegistry);
+        Gauge.builder("servicelog.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+
+        worker = new Thread(this::drain, "servicelog-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Adds the duration column to the servicelog table, which the writer fills in.
+     */
+    public void install(){
+        Integer count = jdbcTemplate.queryForObject("select count(*) from information_schema.columns where table_schema=database() and table_name='servicelog' and column_name='duration'", Integer.class);
+        if(count != null && count == 0) jdbcTemplate.execute("alter table servicelog add column duration int null");
+    }
+
+    /**
+     * Queues a log for writing. When the queue is full, DROP_OLDEST discards the oldest queued log,
+     * BLOCK waits briefly for space and SAMPLE keeps only every n-th log until the queue drains below half.
+     */
+    public void write(Servicelog servicelog){
+        switch (overflowPolicy){
+            case BLOCK:
+                try {
+                    if(queue.offer(servicelog, BLOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) enqueued.incrementAndGet();
+                    else dropped.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                }
+                return;
+            case SAMPLE:
+                if(queue.size() > queue.remainingCapacity() && offered.incrementAndGet() % sampleRate != 0){
+                    dropped.incrementAndGet();
+                    return;
+                }
+                if(queue.offer(servicelog)) enqueued.incrementAndGet();
+                else dropped.incrementAndGet();
+                return;
+            default:
+                while (!queue.offer(servicelog)){
+                    if(queue.poll() != null) dropped.incrementAndGet();
+                }
+                enqueued.incrementAndGet();
+        }
+    }
+
+    public long getEnqueuedCount(){
+        return enqueued.get();
+    }
+
+    public long getWrittenCount(){
+        return written.get();
+    }
+
+    public long getDroppedCount(){
+        return dropped.get();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(flushIntervalMillis * 5);
+        flush(new ArrayList<>());
+    }
+
+    private void drain(){
+        List<Servicelog> batch = new ArrayList<>(batchSize);
+        while (running){
+            try {
+                Servicelog first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if(first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private void flush(List<Servicelog> batch){
+        while (queue.drainTo(batch, batchSize) > 0) writeBatch(batch);
+    }
+
+    private void writeBatch(List<Servicelog> batch){
+        try {
+            jdbcTemplate.batchUpdate(INSERT_QUERY, batch, batch.size(), (statement, servicelog) -> {
+                statement.setString(1, servicelog.getId());
+                statement.setString(2, servicelog.getMethod());
+                statement.setObject(3, servicelog.getResponsecode());
+                statement.setString(4, servicelog.getIp());
+                statement.setTimestamp(5, Timestamp.valueOf(servicelog.getTorequest()));
+                statement.setString(6, servicelog.getUrl());
+                statement.setString(7, servicelog.getHandler());
+                statement.setString(8, servicelog.getToken() == null ? null : servicelog.getToken().getId());
+                statement.setObject(9, servicelog.getDuration());
+            });
+            written.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            dropped.addAndGet(batch.size());
+            logger.warn("Unable to write " + batch.size() + " service logs", e);
+        } finally {
+            batch.clear();
+        }
+    }
+}
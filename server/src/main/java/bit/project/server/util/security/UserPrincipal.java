@@ -0,0 +1,38 @@
+package bit.project.server.util.security;
+
+import bit.project.server.UsecaseList;
+import bit.project.server.entity.Token;
+import bit.project.server.entity.User;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * An authenticated token together with its user and the permission mask granted through the user's roles.
+ */
+@Getter
+public class UserPrincipal {
+    private final Token token;
+    private final User user;
+    private final PermissionMask permissions;
+    private final long loadedAt;
+
+    public UserPrincipal(Token token, PermissionMask permissions){
+        this.token = token;
+        this.user = token.getUser();
+        this.permissions = permissions;
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    public boolean isExpired(){
+        return token.getToexpiration() != null && LocalDateTime.now().isAfter(token.getToexpiration());
+    }
+
+    public boolean hasPrivilege(UsecaseList... usecases){
+        return hasPrivilege(PermissionMask.of(usecases));
+    }
+
+    public boolean hasPrivilege(PermissionMask required){
+        return user.isSuperAdmin() || permissions.intersects(required);
+    }
+}
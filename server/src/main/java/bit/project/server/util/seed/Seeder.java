@@ -2,6 +2,8 @@ package bit.project.server.util.seed;
 
 import bit.project.server.UsecaseList;
 import bit.project.server.util.helper.StringHelper;
+import bit.project.server.util.reference.ReferenceData;
+import bit.project.server.util.security.RolePermissions;
 import bit.project.server.util.security.SystemModule;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -9,6 +11,8 @@ import org.springframework.context.annotation.ClassPathScanningCandidateComponen
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.persistence.*;
 import java.lang.reflect.Field;
@@ -21,6 +25,12 @@ public class Seeder {
     @Autowired
     EntityManager entityManager;
 
+    @Autowired
+    RolePermissions rolePermissions;
+
+    @Autowired
+    ReferenceData referenceData;
+
     @Transactional
     public void seed() throws IllegalAccessException, ClassNotFoundException, NoSuchFieldException, NoSuchMethodException, InvocationTargetException, InstantiationException {
         seedUsecases();
@@ -76,6 +86,13 @@ public class Seeder {
 
         entityManager.createNativeQuery("SET FOREIGN_KEY_CHECKS=1").executeUpdate();
 
+        // The cached lookup tables are reloaded once the new rows are visible to other transactions
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                referenceData.reload();
+            }
+        });
     }
 
     private void seedUsecases() throws IllegalAccessException {
@@ -139,6 +156,8 @@ public class Seeder {
 
             }
         }
+
+        rolePermissions.invalidate();
     }
 
 
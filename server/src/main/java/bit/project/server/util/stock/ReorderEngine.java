@@ -0,0 +1,234 @@
+package bit.project.server.util.stock;
+
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Purchaseitem;
+import bit.project.server.entity.Supplier;
+import bit.project.server.util.dto.PurchaseDraft;
+import bit.project.server.util.outbox.Outbox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the set of items below their reorder point in the reorderitem table, and turns it into draft purchases.
+ * The set is updated incrementally: items whose stock or reorder point changed are collected from the stock ledger
+ * and the item endpoints, and only those are checked, in one query per batch.
+ * Drafts are kept apart from purchases, as saving a purchase adds its items to stock; a draft is one supplier's
+ * share of the shortfall, to be placed as a purchase or dismissed by a manager. An item that is no longer short,
+ * e.g. because the purchase was placed, is taken out of its draft, and a draft left empty is closed.
+ */
+@Component
+public class ReorderEngine {
+
+    private static final String ON_HAND_QUERY = "select i.id, coalesce(v.rop, i.rop) rop, coalesce(i.qty,0) + coalesce((select sum(s.delta) from itemstockstripe s where s.item_id=i.id),0) onhand from item i left join itemvelocity v on v.item_id=i.id";
+
+    private final Logger logger = LoggerFactory.getLogger(ReorderEngine.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StockLedger stockLedger;
+    private final Outbox outbox;
+    private final int targetFactor;
+    private final Set<Integer> changed = ConcurrentHashMap.newKeySet();
+
+    public ReorderEngine(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, StockLedger stockLedger, Outbox outbox,
+                         @Value("${reorder.target-factor:2}") int targetFactor){
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stockLedger = stockLedger;
+        this.outbox = outbox;
+        this.targetFactor = targetFactor;
+    }
+
+    @PostConstruct
+    public void listen(){
+        stockLedger.addListener(changes -> {
+            for (StockChange change : changes) changed.addAll(change.getDeltas().keySet());
+        });
+    }
+
+    /**
+     * Creates the reorder tables. The set of items below their reorder point is filled with one scan of the items
+     * when its table is created; after that it is only updated incrementally.
+     */
+    public void install(){
+        Integer count = jdbcTemplate.queryForObject("select count(*) from information_schema.tables where table_schema=database() and table_name='reorderitem'", Integer.class);
+        jdbcTemplate.execute("create table if not exists reorderitem(item_id int not null primary key, onhand int not null, rop int not null, todetected datetime not null, purchasedraft_id int null, index index_reorderitem_purchasedraft_id(purchasedraft_id))");
+        jdbcTemplate.execute("create table if not exists purchasedraft(id int not null auto_increment primary key, supplier_id int not null, tocreation datetime not null)");
+        jdbcTemplate.execute("create table if not exists purchasedraftitem(id int not null auto_increment primary key, purchasedraft_id int not null, item_id int not null, qty int not null, unitprice decimal(10,2) null, index index_purchasedraftitem_purchasedraft_id(purchasedraft_id))");
+
+        if(count != null && count == 0){
+            jdbcTemplate.update("insert into reorderitem(item_id, onhand, rop, todetected) select id, onhand, rop, ? from (" + ON_HAND_QUERY + " where coalesce(v.rop, i.rop) is not null) stock where onhand < rop",
+                    Timestamp.valueOf(LocalDateTime.now()));
+        }
+    }
+
+    /**
+     * Queues an item to be checked, e.g. after its reorder point was changed.
+     */
+    public void changed(Integer itemId){
+        changed.add(itemId);
+    }
+
+    /**
+     * Brings the set up to date for the items that changed since the last check.
+     */
+    @Scheduled(fixedDelayString = "${reorder.check-interval-millis:5000}")
+    public void check(){
+        if(changed.isEmpty()) return;
+        List<Integer> itemIds = new ArrayList<>(changed);
+        changed.removeAll(itemIds);
+
+        try {
+            List<Object[]> below = new ArrayList<>();
+            Set<Integer> above = new HashSet<>(itemIds);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            namedParameterJdbcTemplate.query(ON_HAND_QUERY + " where i.id in (:ids)", new MapSqlParameterSource("ids", itemIds), rs -> {
+                int rop = rs.getInt("rop");
+                if(rs.wasNull()) return;
+                int onHand = rs.getInt("onhand");
+                if(onHand < rop){
+                    below.add(new Object[]{rs.getInt("id"), onHand, rop, now});
+                    above.remove(rs.getInt("id"));
+                }
+            });
+
+            if(!below.isEmpty()){
+                jdbcTemplate.batchUpdate("insert into reorderitem(item_id, onhand, rop, todetected) values(?,?,?,?) on duplicate key update onhand=values(onhand), rop=values(rop)", below);
+            }
+            if(!above.isEmpty()) remove(above);
+        } catch (RuntimeException e) {
+            changed.addAll(itemIds);
+            logger.warn("Unable to check reorder points", e);
+        }
+    }
+
+    private void remove(Set<Integer> itemIds){
+        MapSqlParameterSource ids = new MapSqlParameterSource("ids", itemIds);
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Integer> draftIds = namedParameterJdbcTemplate.queryForList("select distinct purchasedraft_id from reorderitem where item_id in (:ids) and purchasedraft_id is not null", ids, Integer.class);
+            namedParameterJdbcTemplate.update("delete from reorderitem where item_id in (:ids)", ids);
+            if(draftIds.isEmpty()) return;
+
+            MapSqlParameterSource draftItems = new MapSqlParameterSource("ids", itemIds).addValue("draftIds", draftIds);
+            namedParameterJdbcTemplate.update("delete from purchasedraftitem where item_id in (:ids) and purchasedraft_id in (:draftIds)", draftItems);
+            namedParameterJdbcTemplate.update("delete from purchasedraft where id in (:draftIds) and not exists(select 1 from purchasedraftitem di where di.purchasedraft_id=purchasedraft.id)", draftItems);
+        });
+    }
+
+    /**
+     * Drafts purchases for the items below their reorder point that are not in a draft yet, one per supplier,
+     * and notifies the managers. An item is ordered from its first supplier, up to the target factor times its
+     * reorder point, at the unit price of its last purchase.
+     */
+    public void createDrafts(){
+        check();
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<Integer, List<Purchaseitem>> shortfalls = new TreeMap<>();
+            int[] unsupplied = {0};
+            jdbcTemplate.query("select r.item_id, r.onhand, r.rop, " +
+                    "(select min(isp.supplier_id) from itemsupplier isp where isp.item_id=r.item_id) supplier_id, " +
+                    "(select pi.unitprice from purchaseitem pi where pi.item_id=r.item_id order by pi.id desc limit 1) unitprice " +
+                    "from reorderitem r where r.purchasedraft_id is null for update", rs -> {
+                int supplierId = rs.getInt("supplier_id");
+                if(rs.wasNull()){
+                    unsupplied[0]++;
+                    return;
+                }
+                Purchaseitem purchaseitem = new Purchaseitem();
+                purchaseitem.setItem(new Item(rs.getInt("item_id")));
+                purchaseitem.setQty(Math.max(1, rs.getInt("rop") * targetFactor - rs.getInt("onhand")));
+                purchaseitem.setUnitprice(rs.getBigDecimal("unitprice"));
+                shortfalls.computeIfAbsent(supplierId, id -> new ArrayList<>()).add(purchaseitem);
+            });
+            if(shortfalls.isEmpty()) return;
+
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            int itemCount = 0;
+            for (Map.Entry<Integer, List<Purchaseitem>> shortfall : shortfalls.entrySet()) {
+                KeyHolder keyHolder = new GeneratedKeyHolder();
+                jdbcTemplate.update(connection -> {
+                    PreparedStatement statement = connection.prepareStatement("insert into purchasedraft(supplier_id, tocreation) values(?,?)", Statement.RETURN_GENERATED_KEYS);
+                    statement.setInt(1, shortfall.getKey());
+                    statement.setTimestamp(2, now);
+                    return statement;
+                }, keyHolder);
+                int draftId = keyHolder.getKey().intValue();
+
+                List<Purchaseitem> purchaseitems = shortfall.getValue();
+                jdbcTemplate.batchUpdate("insert into purchasedraftitem(purchasedraft_id, item_id, qty, unitprice) values(?,?,?,?)", purchaseitems, purchaseitems.size(), (statement, purchaseitem) -> {
+                    statement.setInt(1, draftId);
+                    statement.setInt(2, purchaseitem.getItem().getId());
+                    statement.setInt(3, purchaseitem.getQty());
+                    statement.setBigDecimal(4, purchaseitem.getUnitprice());
+                });
+
+                List<Integer> itemIds = new ArrayList<>();
+                for (Purchaseitem purchaseitem : purchaseitems) itemIds.add(purchaseitem.getItem().getId());
+                namedParameterJdbcTemplate.update("update reorderitem set purchasedraft_id=:draftId where item_id in (:ids)",
+                        new MapSqlParameterSource("draftId", draftId).addValue("ids", itemIds));
+                itemCount += purchaseitems.size();
+            }
+
+            String message = shortfalls.size() + " draft purchases created for " + itemCount + " items below reorder point...";
+            if(unsupplied[0] > 0) message += " " + unsupplied[0] + " more items have no supplier.";
+            outbox.publish(Outbox.EventType.PURCHASES_DRAFTED, null, message);
+        });
+    }
+
+    public List<PurchaseDraft> getDrafts(){
+        Map<Integer, PurchaseDraft> drafts = new LinkedHashMap<>();
+        jdbcTemplate.query("select d.id, d.supplier_id, s.code supplier_code, s.name supplier_name, d.tocreation, di.id purchasedraftitem_id, di.item_id, i.code item_code, di.qty, di.unitprice " +
+                "from purchasedraft d inner join purchasedraftitem di on di.purchasedraft_id=d.id " +
+                "inner join supplier s on s.id=d.supplier_id inner join item i on i.id=di.item_id order by d.id, di.id", rs -> {
+            PurchaseDraft draft = drafts.get(rs.getInt("id"));
+            if(draft == null){
+                Supplier supplier = new Supplier(rs.getInt("supplier_id"), rs.getString("supplier_code"), rs.getString("supplier_name"), null);
+                draft = new PurchaseDraft(rs.getInt("id"), supplier, rs.getTimestamp("tocreation").toLocalDateTime());
+                draft.setTotal(BigDecimal.ZERO);
+                drafts.put(draft.getId(), draft);
+            }
+
+            Purchaseitem purchaseitem = new Purchaseitem(rs.getInt("purchasedraftitem_id"));
+            purchaseitem.setItem(new Item(rs.getInt("item_id"), rs.getString("item_code")));
+            purchaseitem.setQty(rs.getInt("qty"));
+            purchaseitem.setUnitprice(rs.getBigDecimal("unitprice"));
+            draft.getPurchaseitemList().add(purchaseitem);
+            if(purchaseitem.getUnitprice() != null){
+                draft.setTotal(draft.getTotal().add(purchaseitem.getUnitprice().multiply(BigDecimal.valueOf(purchaseitem.getQty()))));
+            }
+        });
+        return new ArrayList<>(drafts.values());
+    }
+
+    /**
+     * Dismisses a draft. Its items are drafted again by the next run if they are still below their reorder point.
+     */
+    public void deleteDraft(Integer id){
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("update reorderitem set purchasedraft_id=null where purchasedraft_id=?", id);
+            jdbcTemplate.update("delete from purchasedraftitem where purchasedraft_id=?", id);
+            jdbcTemplate.update("delete from purchasedraft where id=?", id);
+        });
+    }
+}
@@ -0,0 +1,273 @@
+package bit.project.server.util.stock;
+
+import bit.project.server.entity.Item;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Exponentially weighted daily sales rate and variance of every item, from which the reorder point and the days
+ * of cover are computed.
+ * Sales are added to the running day of the item as the stock ledger records them; when a day is over it is folded
+ * into the averages, days without sales included, so no sales history is ever read again. Sales that are added,
+ * changed or deleted for an earlier date adjust the rate by the weight that day has in it. The reorder point is
+ * the demand over the lead time of the item's suppliers plus a safety stock of the safety factor times its
+ * standard deviation.
+ * The state is kept in memory and written to the itemvelocity table periodically, where the reorder engine reads
+ * the computed reorder points. It assumes all sales go through this node's ledger.
+ */
+@Component
+public class SalesVelocity {
+
+    private static final int MAX_ROLLED_DAYS = 3*365;
+
+    private final Logger logger = LoggerFactory.getLogger(SalesVelocity.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StockLedger stockLedger;
+    private final ReorderEngine reorderEngine;
+    private final double smoothing;
+    private final double safetyFactor;
+    private final int defaultLeadTime;
+    private final int bootstrapDays;
+    private final int bootstrapThreads;
+    private final Map<Integer, Velocity> velocities = new ConcurrentHashMap<>();
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private volatile Map<Integer, Integer> leadTimes = new HashMap<>();
+
+    public SalesVelocity(JdbcTemplate jdbcTemplate, StockLedger stockLedger, ReorderEngine reorderEngine,
+                         @Value("${velocity.smoothing:0.1}") double smoothing,
+                         @Value("${velocity.safety-factor:1.65}") double safetyFactor,
+                         @Value("${velocity.default-lead-time-days:7}") int defaultLeadTime,
+                         @Value("${velocity.bootstrap-days:180}") int bootstrapDays,
+                         @Value("${velocity.bootstrap-threads:4}") int bootstrapThreads){
+        this.jdbcTemplate = jdbcTemplate;
+        this.stockLedger = stockLedger;
+        this.reorderEngine = reorderEngine;
+        this.smoothing = smoothing;
+        this.safetyFactor = safetyFactor;
+        this.defaultLeadTime = defaultLeadTime;
+        this.bootstrapDays = bootstrapDays;
+        this.bootstrapThreads = bootstrapThreads;
+    }
+
+    private void listen(){
+        stockLedger.addListener(changes -> {
+            int today = (int) LocalDate.now().toEpochDay();
+            for (StockChange change : changes) {
+                if(change.getType() != StockChange.Type.SALE && change.getType() != StockChange.Type.SALE_UPDATE && change.getType() != StockChange.Type.SALE_DELETE) continue;
+                int day = change.getDate() == null ? today : (int) Math.min(today, change.getDate().toEpochDay());
+                change.getDeltas().forEach((itemId, qty) -> sold(itemId, day, today, -qty));
+            }
+        });
+    }
+
+    /**
+     * Creates the itemvelocity table and the supplier lead time column. When the table is new, the averages are
+     * bootstrapped from the sales of the last bootstrap days, loading the items in parallel partitions.
+     * Sales are only followed once the stored state is loaded, so no sale is added to a running day that the
+     * stored one then replaces.
+     */
+    public void install() throws InterruptedException, ExecutionException {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from information_schema.columns where table_schema=database() and table_name='supplier' and column_name='leadtime'", Integer.class);
+        if(count != null && count == 0) jdbcTemplate.execute("alter table supplier add column leadtime int null");
+
+        count = jdbcTemplate.queryForObject("select count(*) from information_schema.tables where table_schema=database() and table_name='itemvelocity'", Integer.class);
+        jdbcTemplate.execute("create table if not exists itemvelocity(item_id int not null primary key, day int not null, pending double not null, rate double not null, variance double not null, rop int not null)");
+        loadLeadTimes();
+
+        if(count != null && count == 0){
+            bootstrap();
+            flush();
+        }else{
+            jdbcTemplate.query("select item_id, day, pending, rate, variance from itemvelocity", rs -> {
+                Velocity velocity = new Velocity(rs.getInt("day"));
+                velocity.pending = rs.getDouble("pending");
+                velocity.rate = rs.getDouble("rate");
+                velocity.variance = rs.getDouble("variance");
+                velocities.put(rs.getInt("item_id"), velocity);
+            });
+        }
+        listen();
+    }
+
+    /**
+     * Sets the sales velocity, the computed reorder point and the days of cover of the item.
+     * The qty of the item has to be its on-hand quantity.
+     */
+    public Item apply(Item item){
+        Velocity velocity = velocities.get(item.getId());
+        if(velocity == null) return item;
+
+        synchronized (velocity){
+            velocity.roll((int) LocalDate.now().toEpochDay());
+            item.setSalesvelocity(velocity.rate);
+            item.setComputedrop(getRop(velocity, leadTimes.getOrDefault(item.getId(), defaultLeadTime)));
+            if(velocity.rate > 0 && item.getQty() != null) item.setDaysofcover(Math.max(0, item.getQty()) / velocity.rate);
+        }
+        return item;
+    }
+
+    /**
+     * Rolls every item into the new day, so items that did not sell decay too, and refreshes the lead times.
+     */
+    @Scheduled(cron = "${velocity.roll-cron:0 5 0 * * *}")
+    public void roll(){
+        int today = (int) LocalDate.now().toEpochDay();
+        velocities.forEach((itemId, velocity) -> {
+            synchronized (velocity){
+                velocity.roll(today);
+            }
+            dirty.add(itemId);
+        });
+        loadLeadTimes();
+        flush();
+    }
+
+    /**
+     * Writes the changed items and their reorder points, and has the reorder engine check them.
+     */
+    @Scheduled(fixedDelayString = "${velocity.flush-interval-millis:60000}")
+    public void flush(){
+        if(dirty.isEmpty()) return;
+        List<Integer> itemIds = new ArrayList<>(dirty);
+        dirty.removeAll(itemIds);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (Integer itemId : itemIds) {
+            Velocity velocity = velocities.get(itemId);
+            synchronized (velocity){
+                rows.add(new Object[]{itemId, velocity.day, velocity.pending, velocity.rate, velocity.variance,
+                        getRop(velocity, leadTimes.getOrDefault(itemId, defaultLeadTime))});
+            }
+        }
+
+        try {
+            jdbcTemplate.batchUpdate("insert into itemvelocity(item_id, day, pending, rate, variance, rop) values(?,?,?,?,?,?) " +
+                    "on duplicate key update day=values(day), pending=values(pending), rate=values(rate), variance=values(variance), rop=values(rop)", rows);
+            for (Integer itemId : itemIds) reorderEngine.changed(itemId);
+        } catch (RuntimeException e) {
+            dirty.addAll(itemIds);
+            logger.warn("Unable to write sales velocities", e);
+        }
+    }
+
+    @PreDestroy
+    public void close(){
+        flush();
+    }
+
+    private void sold(Integer itemId, int day, int today, int qty){
+        Velocity velocity = velocities.computeIfAbsent(itemId, id -> new Velocity(today));
+        synchronized (velocity){
+            velocity.roll(today);
+            velocity.add(day, qty);
+        }
+        dirty.add(itemId);
+    }
+
+    private int getRop(Velocity velocity, int leadTime){
+        double demand = velocity.rate * leadTime;
+        double safetyStock = safetyFactor * Math.sqrt(velocity.variance * leadTime);
+        return (int) Math.ceil(demand + safetyStock);
+    }
+
+    /**
+     * The lead time of the supplier each item is drafted from, see {@link ReorderEngine#createDrafts()}.
+     */
+    private void loadLeadTimes(){
+        Map<Integer, Integer> loaded = new HashMap<>();
+        jdbcTemplate.query("select isp.item_id, s.leadtime from itemsupplier isp inner join supplier s on s.id=isp.supplier_id " +
+                        "where s.leadtime is not null and isp.supplier_id=(select min(x.supplier_id) from itemsupplier x where x.item_id=isp.item_id)",
+                rs -> { loaded.put(rs.getInt("item_id"), rs.getInt("leadtime")); });
+        leadTimes = loaded;
+    }
+
+    private void bootstrap() throws InterruptedException, ExecutionException {
+        LocalDate today = LocalDate.now();
+        LocalDate from = today.minusDays(bootstrapDays);
+        int first = (int) from.toEpochDay();
+        int last = (int) today.toEpochDay();
+
+        ExecutorService executor = Executors.newFixedThreadPool(bootstrapThreads);
+        try {
+            List<Future<?>> parts = new ArrayList<>();
+            for (int i = 0; i < bootstrapThreads; i++) {
+                int partition = i;
+                parts.add(executor.submit(() -> {
+                    // Rows come ordered by item and day, so each item is folded day by day as it streams by
+                    jdbcTemplate.query("select si.item_id, s.date, sum(si.qty) qty from saleitem si inner join sale s on s.id=si.sale_id " +
+                            "where s.date >= ? and s.date <= ? and mod(si.item_id, ?) = ? group by si.item_id, s.date order by si.item_id, s.date", rs -> {
+                        int day = (int) rs.getDate("date").toLocalDate().toEpochDay();
+                        Velocity velocity = velocities.computeIfAbsent(rs.getInt("item_id"), id -> new Velocity(first));
+                        synchronized (velocity){
+                            velocity.roll(day);
+                            velocity.pending += rs.getInt("qty");
+                        }
+                    }, Date.valueOf(from), Date.valueOf(today), bootstrapThreads, partition);
+                }));
+            }
+            for (Future<?> part : parts) part.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        velocities.forEach((itemId, velocity) -> {
+            synchronized (velocity){
+                velocity.roll(last);
+            }
+            dirty.add(itemId);
+        });
+        logger.info("Bootstrapped the sales velocity of " + velocities.size() + " items");
+    }
+
+    /**
+     * Averages of the days before day, and the sales of day so far.
+     */
+    private class Velocity {
+        private int day;
+        private double pending;
+        private double rate;
+        private double variance;
+
+        private Velocity(int day){
+            this.day = day;
+        }
+
+        /**
+         * Adds sales of a day. A day that is already folded into the rate has the weight smoothing*(1-smoothing)^(age-1)
+         * there, so the rate is corrected by that share of the quantity.
+         */
+        private void add(int salesDay, double qty){
+            if(salesDay >= day){
+                pending += qty;
+                return;
+            }
+            int age = day - salesDay;
+            if(age > MAX_ROLLED_DAYS) return;
+            rate = Math.max(0, rate + smoothing * Math.pow(1 - smoothing, age - 1) * qty);
+        }
+
+        private void roll(int today){
+            if(today <= day) return;
+            int days = Math.min(today - day, MAX_ROLLED_DAYS);
+            for (int i = 0; i < days; i++) {
+                double sales = Math.max(0, pending);
+                double difference = sales - rate;
+                rate += smoothing * difference;
+                variance = (1 - smoothing) * (variance + smoothing * difference * difference);
+                pending = 0;
+            }
+            day = today;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package bit.project.server.util.stock;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Net stock delta per item caused by one document, e.g. the lines of a sale.
+ */
+public class StockChange {
+
+    public enum Type{
+        OPENING(false),
+        ADJUSTMENT(false),
+        SALE(true),
+        SALE_UPDATE(true),
+        SALE_DELETE(false),
+        PURCHASE(false),
+        PURCHASE_UPDATE(false),
+        PURCHASE_DELETE(false);
+
+        /**
+         * Whether the stock taken out by a change of this type has to be available.
+         */
+        public final boolean checksAvailability;
+
+        Type(boolean checksAvailability){
+            this.checksAvailability = checksAvailability;
+        }
+    }
+
+    private final Type type;
+    private final String reference;
+    private final Map<Integer, Integer> deltas = new LinkedHashMap<>();
+    private final Map<Integer, Integer> targets = new LinkedHashMap<>();
+    private LocalDate date;
+
+    public StockChange(Type type, String reference){
+        this.type = type;
+        this.reference = reference;
+    }
+
+    public StockChange add(Integer itemId, Integer qty){
+        if(itemId == null || qty == null || qty == 0) return this;
+        deltas.merge(itemId, qty, Integer::sum);
+        return this;
+    }
+
+    /**
+     * Sets the on-hand quantity of the item. The delta is worked out when the change is reserved, from the stock
+     * counters at that moment, so stock taken out by concurrent changes is not lost.
+     */
+    public StockChange setTarget(Integer itemId, Integer qty){
+        if(itemId == null || qty == null) return this;
+        targets.put(itemId, qty);
+        return this;
+    }
+
+    /**
+     * Sets the business date of the document, e.g. the date of a sale, when it may differ from the day it is saved.
+     */
+    public StockChange setDate(LocalDate date){
+        this.date = date;
+        return this;
+    }
+
+    public LocalDate getDate(){
+        return date;
+    }
+
+    public Type getType(){
+        return type;
+    }
+
+    public String getReference(){
+        return reference;
+    }
+
+    /**
+     * Item ids mapped to their non zero net deltas.
+     */
+    public Map<Integer, Integer> getDeltas(){
+        Map<Integer, Integer> result = new LinkedHashMap<>();
+        deltas.forEach((itemId, qty) -> { if(qty != 0) result.put(itemId, qty); });
+        return result;
+    }
+
+    public boolean isEmpty(){
+        return getDeltas().isEmpty() && targets.isEmpty();
+    }
+
+    /**
+     * Removes the targets of the change, to be turned into deltas by the ledger.
+     */
+    Map<Integer, Integer> takeTargets(){
+        Map<Integer, Integer> result = new LinkedHashMap<>(targets);
+        targets.clear();
+        return result;
+    }
+}
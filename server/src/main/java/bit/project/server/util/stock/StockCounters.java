@@ -0,0 +1,87 @@
+package bit.project.server.util.stock;
+
+import bit.project.server.util.exception.ConflictException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Lock-free in-memory on-hand counters, loaded lazily from the ledger.
+ * A basket is reserved all or nothing with compare-and-set, so parallel checkouts can never take an item below zero.
+ * The counters assume that every stock change of the database goes through this node's ledger.
+ */
+class StockCounters {
+
+    private final Function<Collection<Integer>, Map<Integer, Integer>> loader;
+    private final Map<Integer, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    StockCounters(Function<Collection<Integer>, Map<Integer, Integer>> loader){
+        this.loader = loader;
+    }
+
+    /**
+     * Loads the counters of the given items that are not loaded yet.
+     * Must be called before the change is persisted, so that a later load can never miss the change.
+     */
+    void load(Collection<Integer> itemIds){
+        List<Integer> missing = new ArrayList<>();
+        for (Integer itemId : itemIds) if(!counters.containsKey(itemId)) missing.add(itemId);
+        if(missing.isEmpty()) return;
+
+        Map<Integer, Integer> onHand = loader.apply(missing);
+        for (Integer itemId : missing) counters.putIfAbsent(itemId, new AtomicLong(onHand.getOrDefault(itemId, 0)));
+    }
+
+    /**
+     * Takes the given quantities (item id to positive qty) out of the counters, or nothing at all when any item is short.
+     */
+    void reserve(Map<Integer, Integer> quantities){
+        load(quantities.keySet());
+
+        Map<Integer, Integer> reserved = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> entry : new TreeMap<>(quantities).entrySet()) {
+            AtomicLong counter = counters.get(entry.getKey());
+            long requested = entry.getValue();
+            long available;
+            do {
+                available = counter.get();
+                if(available < requested){
+                    release(reserved);
+                    throw new ConflictException("Insufficient stock for item " + entry.getKey() + ". Available " + available + ", requested " + requested);
+                }
+            } while (!counter.compareAndSet(available, available - requested));
+            reserved.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Sets the counter of a loaded item to the target and returns the delta that took it there.
+     */
+    int set(Integer itemId, int target){
+        AtomicLong counter = counters.get(itemId);
+        long current;
+        do {
+            current = counter.get();
+        } while (!counter.compareAndSet(current, target));
+        return (int) (target - current);
+    }
+
+    /**
+     * Returns reserved quantities (item id to the qty taken out) to the counters.
+     */
+    void release(Map<Integer, Integer> quantities){
+        quantities.forEach((itemId, qty) -> add(itemId, qty));
+    }
+
+    void add(Integer itemId, int delta){
+        AtomicLong counter = counters.get(itemId);
+        if(counter != null) counter.addAndGet(delta);
+    }
+
+    Long get(Integer itemId){
+        AtomicLong counter = counters.get(itemId);
+        return counter == null ? null : counter.get();
+    }
+}
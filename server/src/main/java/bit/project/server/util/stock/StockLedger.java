@@ -0,0 +1,264 @@
+package bit.project.server.util.stock;
+
+import bit.project.server.entity.Item;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Append-only stock ledger.
+ * Every stock change is written to the stockmovement table for auditing and added to one of a few striped
+ * counter rows of the item, so concurrent sales of the same item do not queue on the item row.
+ * A background job folds the striped deltas into Item.qty in batches. The on-hand quantity of an item is
+ * its qty plus the deltas that are not folded yet.
+ * Sales are checked against in-memory counters before they are written, see {@link StockCounters}.
+ */
+@Component
+public class StockLedger {
+
+    private static final String[] LEGACY_TRIGGERS = {
+            "saleitem_insert", "saleitem_update", "saleitem_delete",
+            "purchaseitem_insert", "purchaseitem_update", "purchaseitem_delete"
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(StockLedger.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final int stripes;
+    private final int foldBatchSize;
+    private final StockCounters counters = new StockCounters(this::getOnHand);
+    private final List<Consumer<List<StockChange>>> listeners = new CopyOnWriteArrayList<>();
+
+    public StockLedger(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, EntityManager entityManager,
+                       @Value("${stock.stripes:8}") int stripes,
+                       @Value("${stock.fold-batch-size:500}") int foldBatchSize){
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.stripes = stripes;
+        this.foldBatchSize = foldBatchSize;
+    }
+
+    /**
+     * Creates the ledger tables and drops the stock triggers the ledger replaces.
+     */
+    public void install(){
+        jdbcTemplate.execute("create table if not exists stockmovement(id bigint not null auto_increment primary key, item_id int not null, qty int not null, type varchar(20) not null, reference varchar(20) null, tocreation datetime not null, index index_stockmovement_item_id(item_id, id))");
+        jdbcTemplate.execute("create table if not exists itemstockstripe(item_id int not null, stripe int not null, delta int not null, primary key(item_id, stripe))");
+        for (String trigger : LEGACY_TRIGGERS) jdbcTemplate.execute("drop trigger if exists `" + trigger + "`");
+    }
+
+    /**
+     * Runs the persist function and records the stock change in the same transaction.
+     * Stock taken out by sales is reserved in memory first, so a basket that is short of any item fails
+     * before anything is written.
+     */
+    public <T> T save(Supplier<T> persist, StockChange change){
+        return save(persist, Collections.singletonList(reserve(change)));
+    }
+
+    /**
+     * Holds the stock the change takes out, when the change type requires it to be available.
+     * Throws ConflictException, and holds nothing, when any item is short.
+     * Targets of the change are resolved to deltas here, against the counters, and held the same way.
+     */
+    public StockReservation reserve(StockChange change){
+        Map<Integer, Integer> deltas = change.getDeltas();
+        Map<Integer, Integer> targets = change.takeTargets();
+        Map<Integer, Integer> reserved = new HashMap<>();
+        if(change.getType().checksAvailability){
+            deltas.forEach((itemId, qty) -> { if(qty < 0) reserved.put(itemId, -qty); });
+        }
+
+        Set<Integer> itemIds = new HashSet<>(deltas.keySet());
+        itemIds.addAll(targets.keySet());
+        counters.load(itemIds);
+        counters.reserve(reserved);
+
+        // Resolved only once the reservation can no longer fail, so there is nothing to undo
+        targets.forEach((itemId, qty) -> {
+            int delta = counters.set(itemId, qty);
+            change.add(itemId, delta);
+            reserved.merge(itemId, -delta, Integer::sum);
+        });
+        return new StockReservation(change, reserved);
+    }
+
+    /**
+     * Runs the persist function and records the reserved changes in the same transaction.
+     * The reservations are released when the transaction fails.
+     */
+    public <T> T save(Supplier<T> persist, List<StockReservation> reservations){
+        T saved;
+        try {
+            saved = transactionTemplate.execute(status -> {
+                T result = persist.get();
+                try {
+                    entityManager.flush();
+                } catch (PersistenceException e) {
+                    DataAccessException translated = EntityManagerFactoryUtils.convertJpaAccessExceptionIfPossible(e);
+                    throw translated == null ? e : translated;
+                }
+                List<StockChange> changes = new ArrayList<>();
+                for (StockReservation reservation : reservations) changes.add(reservation.getChange());
+                record(changes);
+                return result;
+            });
+        } catch (RuntimeException e) {
+            for (StockReservation reservation : reservations) counters.release(reservation.getReserved());
+            throw e;
+        }
+
+        List<StockChange> changes = new ArrayList<>();
+        for (StockReservation reservation : reservations) {
+            reservation.getChange().getDeltas().forEach((itemId, qty) -> {
+                if(!reservation.getReserved().containsKey(itemId)) counters.add(itemId, qty);
+            });
+            changes.add(reservation.getChange());
+        }
+        notifyListeners(changes);
+        return saved;
+    }
+
+    /**
+     * Registers a listener that is given the stock changes after they were committed.
+     */
+    public void addListener(Consumer<List<StockChange>> listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * Records the opening quantity of a newly added item. The quantity is already part of Item.qty,
+     * so it is written to the ledger only.
+     */
+    public void recordOpening(Item item){
+        if(item.getQty() == null || item.getQty() == 0) return;
+        List<StockChange> changes = Collections.singletonList(new StockChange(StockChange.Type.OPENING, item.getCode()).add(item.getId(), item.getQty()));
+        insertMovements(changes);
+        notifyListeners(changes);
+    }
+
+    public Integer getOnHand(Integer itemId){
+        return getOnHand(Collections.singleton(itemId)).get(itemId);
+    }
+
+    /**
+     * Item ids mapped to Item.qty plus the deltas not folded into it yet, read in a single statement.
+     */
+    public Map<Integer, Integer> getOnHand(Collection<Integer> itemIds){
+        Map<Integer, Integer> onHand = new HashMap<>();
+        if(itemIds.isEmpty()) return onHand;
+        namedParameterJdbcTemplate.query(
+                "select i.id, coalesce(i.qty,0) + coalesce((select sum(s.delta) from itemstockstripe s where s.item_id=i.id),0) as onhand from item i where i.id in (:ids)",
+                new MapSqlParameterSource("ids", itemIds),
+                resultSet -> { onHand.put(resultSet.getInt(1), resultSet.getInt(2)); });
+        return onHand;
+    }
+
+    /**
+     * Replaces the qty of the given items with their on-hand quantity.
+     * Item.qty is not updatable through JPA, so this never leaks into a later save.
+     */
+    public <T extends Collection<Item>> T applyOnHand(T items){
+        List<Integer> itemIds = new ArrayList<>();
+        for (Item item : items) if(item.getId() != null) itemIds.add(item.getId());
+        Map<Integer, Integer> onHand = getOnHand(itemIds);
+        for (Item item : items) if(onHand.containsKey(item.getId())) item.setQty(onHand.get(item.getId()));
+        return items;
+    }
+
+    public Item applyOnHand(Item item){
+        applyOnHand(Collections.singletonList(item));
+        return item;
+    }
+
+    /**
+     * Moves pending deltas from the stripe rows into Item.qty. Every stripe is reduced by exactly the amount added
+     * to the item in the same transaction, so the on-hand quantity never changes while folding, even when
+     * several nodes fold at the same time.
+     */
+    @Scheduled(fixedDelayString = "${stock.fold-interval-millis:2000}")
+    public void fold(){
+        try {
+            List<Object[]> stripeRows = new ArrayList<>();
+            jdbcTemplate.query("select item_id, stripe, delta from itemstockstripe where delta <> 0 order by item_id, stripe limit ?",
+                    resultSet -> { stripeRows.add(new Object[]{resultSet.getInt(1), resultSet.getInt(2), resultSet.getInt(3)}); }, foldBatchSize);
+            if(stripeRows.isEmpty()) return;
+
+            Map<Integer, Integer> itemDeltas = new TreeMap<>();
+            for (Object[] row : stripeRows) itemDeltas.merge((Integer) row[0], (Integer) row[2], Integer::sum);
+
+            List<Object[]> itemRows = new ArrayList<>();
+            itemDeltas.forEach((itemId, delta) -> itemRows.add(new Object[]{delta, itemId}));
+
+            List<Object[]> stripeUpdates = new ArrayList<>();
+            for (Object[] row : stripeRows) stripeUpdates.add(new Object[]{row[2], row[0], row[1]});
+
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate("update item set qty=coalesce(qty,0)+? where id=?", itemRows);
+                jdbcTemplate.batchUpdate("update itemstockstripe set delta=delta-? where item_id=? and stripe=?", stripeUpdates);
+            });
+            // Item.qty changed behind Hibernate's back, so the cached items are dropped
+            for (Integer itemId : itemDeltas.keySet()) entityManager.getEntityManagerFactory().getCache().evict(Item.class, itemId);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to fold stock deltas", e);
+        }
+    }
+
+    private void notifyListeners(List<StockChange> changes){
+        for (Consumer<List<StockChange>> listener : listeners) {
+            try {
+                listener.accept(changes);
+            } catch (RuntimeException e) {
+                logger.warn("Stock listener failed", e);
+            }
+        }
+    }
+
+    private void record(List<StockChange> changes){
+        Map<Integer, Integer> deltas = new TreeMap<>();
+        for (StockChange change : changes) change.getDeltas().forEach((itemId, qty) -> deltas.merge(itemId, qty, Integer::sum));
+        deltas.values().removeIf(qty -> qty == 0);
+
+        insertMovements(changes);
+        if(deltas.isEmpty()) return;
+
+        int stripe = ThreadLocalRandom.current().nextInt(stripes);
+        List<Object[]> stripeRows = new ArrayList<>();
+        deltas.forEach((itemId, qty) -> stripeRows.add(new Object[]{itemId, stripe, qty}));
+        jdbcTemplate.batchUpdate("insert into itemstockstripe(item_id, stripe, delta) values(?,?,?) on duplicate key update delta=delta+values(delta)", stripeRows);
+    }
+
+    private void insertMovements(List<StockChange> changes){
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> movementRows = new ArrayList<>();
+        for (StockChange change : changes) {
+            change.getDeltas().forEach((itemId, qty) -> movementRows.add(new Object[]{itemId, qty, change.getType().toString(), change.getReference(), now}));
+        }
+        if(movementRows.isEmpty()) return;
+        jdbcTemplate.batchUpdate("insert into stockmovement(item_id, qty, type, reference, tocreation) values(?,?,?,?,?)", movementRows);
+    }
+}
@@ -0,0 +1,26 @@
+package bit.project.server.util.stock;
+
+import java.util.Map;
+
+/**
+ * A stock change whose outgoing quantities, and the deltas of its targets, are held in the in-memory counters until
+ * it is saved or released. Reserved maps item ids to the quantity taken out of the counter, negative when put in.
+ */
+public class StockReservation {
+
+    private final StockChange change;
+    private final Map<Integer, Integer> reserved;
+
+    StockReservation(StockChange change, Map<Integer, Integer> reserved){
+        this.change = change;
+        this.reserved = reserved;
+    }
+
+    public StockChange getChange(){
+        return change;
+    }
+
+    Map<Integer, Integer> getReserved(){
+        return reserved;
+    }
+}
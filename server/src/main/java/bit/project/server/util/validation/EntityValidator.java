@@ -9,8 +9,9 @@ import java.util.Set;
 
 public class EntityValidator {
 
+    private static final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+
     public static void validate(Object object){
-        ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
         javax.validation.Validator validator = validatorFactory.getValidator();
         ValidationErrorBag errorBag = new ValidationErrorBag();
 
@@ -0,0 +1,237 @@
+package bit.project.server.controller;
+
+import bit.project.server.entity.*;
+import bit.project.server.util.security.AccessControlManager;
+import bit.project.server.util.security.Userstatus;
+import bit.project.server.util.stock.StockLedger;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Counts the statements Hibernate prepares while serving the list and detail endpoints, with a cold second-level
+ * cache, and fails when an endpoint goes over its budget. Every list returns a page of ROWS rows and every detail
+ * has ROWS lines, each with its own category and creator where it has one, so a lazy association loaded once per row shows up as a count that grows with ROWS.
+ * Statements run through JdbcTemplate, like the on-hand quantities of the stock ledger, are not counted.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryCountTest {
+
+    private static final int ROWS = 10;
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private EntityManager entityManager;
+    @Autowired private EntityManagerFactory entityManagerFactory;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private StockLedger stockLedger;
+
+    @MockBean private AccessControlManager accessControlManager;
+
+    private Statistics statistics;
+    private Supplier supplier;
+    private Sale sale;
+    private Purchase purchase;
+    private User user;
+    private final List<Item> items = new ArrayList<>();
+
+    @BeforeAll
+    void seed(){
+        stockLedger.install();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            User admin = new User();
+            admin.setUsername("admin");
+            admin.setStatus(Userstatus.ACTIVE.toString());
+            admin.setTocreation(LocalDateTime.now());
+            entityManager.persist(admin);
+
+            Role role = new Role();
+            role.setName("Cashier");
+            role.setCreator(admin);
+            role.setTocreation(LocalDateTime.now());
+            entityManager.persist(role);
+
+            Nametitle nametitle = new Nametitle();
+            nametitle.setName("Mr.");
+            entityManager.persist(nametitle);
+
+            User creator = admin;
+            for (int i = 0; i < ROWS; i++) {
+                Employee employee = new Employee();
+                employee.setCode("EM" + i);
+                employee.setCallingname("Employee " + i);
+                employee.setNametitle(nametitle);
+                employee.setCreator(admin);
+                employee.setTocreation(LocalDateTime.now());
+                entityManager.persist(employee);
+
+                // Every user is created by another user, so creators are distinct rows as well
+                user = new User();
+                user.setUsername("user" + i);
+                user.setStatus(Userstatus.ACTIVE.toString());
+                user.setEmployee(employee);
+                user.setCreator(creator);
+                user.setTocreation(LocalDateTime.now());
+                user.setRoleList(List.of(role));
+                entityManager.persist(user);
+                creator = user;
+            }
+
+            Itemstatus itemstatus = new Itemstatus();
+            itemstatus.setName("Available");
+            entityManager.persist(itemstatus);
+
+            supplier = new Supplier();
+            supplier.setCode("SU1");
+            supplier.setName("Supplier");
+            supplier.setCreator(admin);
+            supplier.setTocreation(LocalDateTime.now());
+            entityManager.persist(supplier);
+
+            for (int i = 0; i < ROWS; i++) {
+                Category category = new Category();
+                category.setName("Category " + i);
+                entityManager.persist(category);
+
+                Item item = new Item();
+                item.setCode("IT" + i);
+                item.setName("Item " + i);
+                item.setPrice(new BigDecimal("10.00"));
+                item.setQty(100);
+                item.setCategory(category);
+                item.setItemstatus(itemstatus);
+                item.setCreator(user);
+                item.setTocreation(LocalDateTime.now());
+                item.setSupplierList(List.of(supplier));
+                entityManager.persist(item);
+                items.add(item);
+            }
+
+            for (int i = 0; i < ROWS; i++) {
+                sale = new Sale();
+                sale.setCode("SA" + i);
+                sale.setDate(LocalDate.now());
+                sale.setCreator(user);
+                sale.setTocreation(LocalDateTime.now());
+                sale.setTotal(new BigDecimal("100.00"));
+                List<Saleitem> saleitems = new ArrayList<>();
+                for (Item item : items) {
+                    Saleitem saleitem = new Saleitem();
+                    saleitem.setSale(sale);
+                    saleitem.setItem(item);
+                    saleitem.setQty(1);
+                    saleitem.setUnitprice(item.getPrice());
+                    saleitems.add(saleitem);
+                }
+                sale.setSaleitemList(saleitems);
+                entityManager.persist(sale);
+
+                purchase = new Purchase();
+                purchase.setCode("PU" + i);
+                purchase.setDate(LocalDate.now());
+                purchase.setSupplier(supplier);
+                purchase.setCreator(user);
+                purchase.setTocreation(LocalDateTime.now());
+                purchase.setTotal(new BigDecimal("100.00"));
+                List<Purchaseitem> purchaseitems = new ArrayList<>();
+                for (Item item : items) {
+                    Purchaseitem purchaseitem = new Purchaseitem();
+                    purchaseitem.setPurchase(purchase);
+                    purchaseitem.setItem(item);
+                    purchaseitem.setQty(1);
+                    purchaseitem.setUnitprice(item.getPrice());
+                    purchaseitems.add(purchaseitem);
+                }
+                purchase.setPurchaseitemList(purchaseitems);
+                entityManager.persist(purchase);
+            }
+        });
+    }
+
+    @BeforeEach
+    void clearCache(){
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    // The page and its count, the suppliers of the page, and the employee and name title of the creators
+    // and supplier creators, which are few users however many items there are
+    @Test
+    void itemList() throws Exception {
+        assertQueries(7, "/items?page=0&size=" + ROWS);
+    }
+
+    @Test
+    void itemDetail() throws Exception {
+        assertQueries(7, "/items/" + items.get(0).getId());
+    }
+
+    @Test
+    void itemBasicBySupplier() throws Exception {
+        assertQueries(1, "/items/basic/" + supplier.getId());
+    }
+
+    @Test
+    void saleList() throws Exception {
+        assertQueries(2, "/sales?page=0&size=" + ROWS);
+    }
+
+    @Test
+    void saleDetail() throws Exception {
+        assertQueries(4, "/sales/" + sale.getId());
+    }
+
+    @Test
+    void purchaseList() throws Exception {
+        assertQueries(2, "/purchases?page=0&size=" + ROWS);
+    }
+
+    @Test
+    void purchaseDetail() throws Exception {
+        assertQueries(3, "/purchases/" + purchase.getId());
+    }
+
+    @Test
+    void userList() throws Exception {
+        assertQueries(4, "/users?page=0&size=" + ROWS);
+    }
+
+    @Test
+    void userDetail() throws Exception {
+        assertQueries(4, "/users/" + user.getId());
+    }
+
+    private void assertQueries(long max, String url) throws Exception {
+        statistics.clear();
+        mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        long count = statistics.getPrepareStatementCount();
+        assertTrue(count <= max, url + " ran " + count + " queries, at most " + max + " expected");
+    }
+}
@@ -0,0 +1,116 @@
+package bit.project.server.util.analytics;
+
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Sale;
+import bit.project.server.entity.Saleitem;
+import bit.project.server.util.dto.SalesQuery;
+import bit.project.server.util.dto.SalesTotal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Changes sales while the cube is being built, from inside the load once it has read the first sale, and checks
+ * that the built cube counts every sale as it is at the end: the sale the load already counted, the one it had
+ * not reached yet and one added after it began.
+ */
+class SalesCubeTest {
+
+    private static final BigDecimal PRICE = new BigDecimal("10.00");
+
+    private JdbcTemplate jdbcTemplate;
+    private Runnable onSecondSale;
+    private SalesCube cube;
+
+    @BeforeEach
+    void setUp(){
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:cube" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource){
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... args) throws DataAccessException {
+                super.query(sql, rs -> {
+                    if(sql.startsWith("select s.id") && rs.getInt("id") == 2 && onSecondSale != null){
+                        onSecondSale.run();
+                        onSecondSale = null;
+                    }
+                    rch.processRow(rs);
+                }, args);
+            }
+        };
+        jdbcTemplate.execute("create table item(id int primary key, category_id int)");
+        jdbcTemplate.execute("create table sale(id int primary key, date date null, tocreation datetime not null, creator_id int null)");
+        jdbcTemplate.execute("create table saleitem(sale_id int not null, item_id int not null, qty int not null, unitprice decimal(10,2) not null, discount decimal(10,2) null)");
+        jdbcTemplate.update("insert into item values(1, 1)");
+        for (int id = 1; id <= 3; id++) insert(sale(id, 1));
+        cube = new SalesCube(jdbcTemplate, 30, 1);
+    }
+
+    @Test
+    void changesDuringBuildAreCountedOnce(){
+        onSecondSale = () -> {
+            // Already counted by the load
+            cube.replace(sale(1, 1), () -> {
+                delete(1);
+                return null;
+            });
+            // Not reached by the load yet
+            cube.replace(sale(3, 1), () -> {
+                delete(3);
+                return insert(sale(3, 7));
+            });
+            cube.added(insert(sale(4, 2)));
+        };
+        cube.build();
+
+        assertTotal(1 + 7 + 2);
+
+        // Once built, changes go to the cube directly
+        cube.replace(sale(2, 1), () -> {
+            delete(2);
+            return null;
+        });
+        assertTotal(7 + 2);
+    }
+
+    private void assertTotal(long qty){
+        List<SalesTotal> totals = cube.getBreakdown(SalesCube.Dimension.ITEM, new SalesQuery());
+        assertEquals(1, totals.size());
+        assertEquals(qty, totals.get(0).getQty());
+        assertEquals(PRICE.multiply(BigDecimal.valueOf(qty)), totals.get(0).getRevenue());
+    }
+
+    private Sale sale(int id, int qty){
+        Sale sale = new Sale(id, "SA" + id, LocalDate.now());
+        sale.setTocreation(LocalDateTime.now());
+        Saleitem saleitem = new Saleitem();
+        saleitem.setSale(sale);
+        saleitem.setItem(new Item(1));
+        saleitem.setQty(qty);
+        saleitem.setUnitprice(PRICE);
+        sale.setSaleitemList(List.of(saleitem));
+        return sale;
+    }
+
+    private Sale insert(Sale sale){
+        jdbcTemplate.update("insert into sale(id, date, tocreation) values(?,?,?)", sale.getId(), sale.getDate(), sale.getTocreation());
+        for (Saleitem saleitem : sale.getSaleitemList()) {
+            jdbcTemplate.update("insert into saleitem(sale_id, item_id, qty, unitprice) values(?,?,?,?)", sale.getId(), 1, saleitem.getQty(), saleitem.getUnitprice());
+        }
+        return sale;
+    }
+
+    private void delete(int id){
+        jdbcTemplate.update("delete from saleitem where sale_id=?", id);
+        jdbcTemplate.update("delete from sale where id=?", id);
+    }
+}
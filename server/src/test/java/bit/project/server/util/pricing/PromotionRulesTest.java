@@ -0,0 +1,56 @@
+package bit.project.server.util.pricing;
+
+import bit.project.server.entity.Item;
+import bit.project.server.entity.Promotion;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PromotionRulesTest {
+
+    @Test
+    void bundleTakesOneUnitOfEachItemPerSet(){
+        Promotion bundle = new Promotion(1);
+        bundle.setType(PromotionType.BUNDLE.name());
+        bundle.setPrice(new BigDecimal("15.00"));
+        bundle.setItemList(List.of(new Item(1), new Item(2)));
+        PromotionRules rules = PromotionRules.compile(List.of(bundle), LocalDate.now());
+
+        // 3 units of item 1 and 2 of item 2 make two sets, the third unit of item 1 is sold at full price
+        int[] itemIds = {1, 2};
+        long[] unitPrices = {1000, 1000};
+        int[] qtys = {3, 2};
+        long[] lineDiscounts = new long[2];
+        long total = rules.apply(2, itemIds, unitPrices, qtys, lineDiscounts, new int[2]);
+
+        assertEquals(2 * 1500 + 1000, total);
+        assertEquals(1000, lineDiscounts[0] + lineDiscounts[1]);
+        assertEquals(total, unitPrices[0] * qtys[0] - lineDiscounts[0] + unitPrices[1] * qtys[1] - lineDiscounts[1]);
+    }
+
+    @Test
+    void multiBuyAppliesToUnitsLeftOverByBundles(){
+        Promotion bundle = new Promotion(1);
+        bundle.setType(PromotionType.BUNDLE.name());
+        bundle.setPrice(new BigDecimal("15.00"));
+        bundle.setItemList(List.of(new Item(1), new Item(2)));
+        Promotion multiBuy = new Promotion(2);
+        multiBuy.setType(PromotionType.MULTI_BUY.name());
+        multiBuy.setBuyqty(3);
+        multiBuy.setPayqty(2);
+        multiBuy.setItemList(List.of(new Item(1)));
+        PromotionRules rules = PromotionRules.compile(List.of(bundle, multiBuy), LocalDate.now());
+
+        int[] itemIds = {1, 2};
+        long[] unitPrices = {1000, 1000};
+        int[] qtys = {4, 1};
+        long[] lineDiscounts = new long[2];
+        long total = rules.apply(2, itemIds, unitPrices, qtys, lineDiscounts, new int[2]);
+
+        assertEquals(1500 + 2000, total);
+    }
+}
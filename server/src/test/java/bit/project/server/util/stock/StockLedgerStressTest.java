@@ -0,0 +1,127 @@
+package bit.project.server.util.stock;
+
+import bit.project.server.util.exception.ConflictException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs parallel checkouts, failing checkouts, purchases and stock adjustments through the ledger and checks that
+ * the quantities written to the database never oversell an item and match the in-memory counters at the end.
+ * The database is mocked; the stripe deltas the ledger writes are summed instead.
+ */
+class StockLedgerStressTest {
+
+    private static final int ITEMS = 5;
+    private static final int INITIAL = 50;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 2000;
+
+    private final Map<Integer, Integer> persisted = new ConcurrentHashMap<>();
+    private StockLedger ledger;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+        List<ResultSet> rows = new ArrayList<>();
+        for (int itemId = 1; itemId <= ITEMS; itemId++) {
+            ResultSet row = mock(ResultSet.class);
+            when(row.getInt(1)).thenReturn(itemId);
+            when(row.getInt(2)).thenReturn(INITIAL);
+            rows.add(row);
+            persisted.put(itemId, INITIAL);
+        }
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (ResultSet row : rows) handler.processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        doAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            List<Object[]> batch = invocation.getArgument(1);
+            if(sql.startsWith("insert into itemstockstripe")) for (Object[] row : batch) persisted.merge((Integer) row[0], (Integer) row[2], Integer::sum);
+            return new int[batch.size()];
+        }).when(jdbcTemplate).batchUpdate(anyString(), ArgumentMatchers.<Object[]>anyList());
+
+        ledger = new StockLedger(jdbcTemplate, mock(PlatformTransactionManager.class), mock(EntityManager.class), 8, 500);
+        StockChange all = new StockChange(StockChange.Type.ADJUSTMENT, "load");
+        for (int itemId = 1; itemId <= ITEMS; itemId++) all.setTarget(itemId, INITIAL);
+        ledger.save(() -> null, all);
+    }
+
+    @Test
+    void parallelCheckoutsNeverOversellNorLoseUpdates() throws Exception {
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    int operation = random.nextInt(100);
+                    if(operation < 5){
+                        ledger.save(() -> null, new StockChange(StockChange.Type.PURCHASE, "P").add(1 + random.nextInt(ITEMS), 1 + random.nextInt(5)));
+                    }else if(operation < 10){
+                        ledger.save(() -> null, new StockChange(StockChange.Type.ADJUSTMENT, "A").setTarget(1 + random.nextInt(ITEMS), random.nextInt(20)));
+                    }else{
+                        boolean fails = operation < 20;
+                        StockChange sale = new StockChange(StockChange.Type.SALE, "S");
+                        int lines = 1 + random.nextInt(3);
+                        for (int l = 0; l < lines; l++) sale.add(1 + random.nextInt(ITEMS), -(1 + random.nextInt(3)));
+                        try {
+                            ledger.save(() -> {
+                                if(fails) throw new IllegalStateException("Rolled back");
+                                return null;
+                            }, sale);
+                            sold.incrementAndGet();
+                        } catch (ConflictException e) {
+                            rejected.incrementAndGet();
+                        } catch (IllegalStateException e) {
+                            assertEquals("Rolled back", e.getMessage());
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) worker.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertTrue(sold.get() > 0);
+        assertTrue(rejected.get() > 0, "The stock should have run short at some point");
+
+        for (int itemId = 1; itemId <= ITEMS; itemId++) {
+            int onHand = persisted.get(itemId);
+            assertTrue(onHand >= 0, "Item " + itemId + " was oversold to " + onHand);
+
+            // The counter has to hold exactly the persisted quantity: one more unit is short, all of it is not
+            int item = itemId;
+            assertThrows(ConflictException.class, () -> ledger.reserve(new StockChange(StockChange.Type.SALE, "probe").add(item, -(onHand + 1))));
+            if(onHand > 0) ledger.save(() -> null, new StockChange(StockChange.Type.SALE, "probe").add(itemId, -onHand));
+            assertEquals(0, persisted.get(itemId));
+        }
+    }
+}